@@ -1,10 +1,14 @@
 package com.afalenkin.webfluxnotes;
 
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.metrics.web.reactive.WebFluxMetricsAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import reactor.blockhound.BlockHound;
 
-@SpringBootApplication
+// Время HTTP запросов записывает RequestMetricsWebFilter вместо MetricsWebFilter из этой автоконфигурации
+@SpringBootApplication(exclude = WebFluxMetricsAutoConfiguration.class)
+@ConfigurationPropertiesScan
 public class WebfluxNotesApplication {
 
     /**
@@ -24,6 +28,10 @@ public class WebfluxNotesApplication {
                                 // Чтобы этого избежать - пришлось добавить такие исключения
                                 .allowBlockingCallsInside("java.io.FilterInputStream", "read")
                                 .allowBlockingCallsInside("java.io.InputStream", "readNBytes")
+                                // Caffeine при переполнении буфера записи может выполнить обслуживание кэша
+                                // в вызывающем потоке и кратковременно ждать блокировку
+                                .allowBlockingCallsInside(
+                                        "com.github.benmanes.caffeine.cache.BoundedLocalCache", "performCleanUp")
         );
     }
 
@@ -0,0 +1,23 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Сброс закэшированных пользователей после их изменения.
+ * Пользователи сразу удаляются из локального кэша, а реализация может дополнительно
+ * оповестить остальные экземпляры приложения.
+ */
+public interface CacheInvalidationBus {
+
+    Mono<Void> invalidate(Collection<Integer> ids);
+
+    default Mono<Void> invalidate(int id) {
+        return invalidate(List.of(id));
+    }
+}
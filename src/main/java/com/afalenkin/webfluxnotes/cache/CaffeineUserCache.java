@@ -0,0 +1,64 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.function.IntFunction;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Кэш ограничен по размеру и по времени жизни записей.
+ * В асинхронном кэше хранятся CompletableFuture, поэтому одновременные промахи по одному идентификатору
+ * не превращаются в N одинаковых запросов к БД: первый запрос запускает загрузку, остальные ждут ее результат.
+ * Если пользователь не найден - future завершается с null, и Caffeine не сохраняет такую запись.
+ * <p>
+ * Метрики: стандартные метрики Caffeine (cache.gets, cache.load, cache.load.duration и т.д.)
+ * и доля попаданий cache.hit.ratio с тегом cache=users.
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.users.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CaffeineUserCache implements UserCache {
+
+    public static final String CACHE_NAME = "users";
+
+    private final AsyncCache<Integer, User> users;
+
+    public CaffeineUserCache(UsersProperties properties, MeterRegistry meterRegistry) {
+        UsersProperties.Cache cache = properties.getCache();
+        this.users = CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(cache.getMaximumSize())
+                        .expireAfterWrite(cache.getTtl())
+                        .recordStats()
+                        .buildAsync(),
+                CACHE_NAME);
+        Gauge.builder("cache.hit.ratio", users, cached -> cached.synchronous().stats().hitRate())
+                .tag("cache", CACHE_NAME)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<User> get(int id, IntFunction<Mono<User>> loader) {
+        return Mono.fromFuture(() -> users.get(id, (key, executor) -> loader.apply(key).toFuture()));
+    }
+
+    @Override
+    public void evict(int id) {
+        users.synchronous().invalidate(id);
+    }
+
+    @Override
+    public void evictAll() {
+        users.synchronous().invalidateAll();
+    }
+}
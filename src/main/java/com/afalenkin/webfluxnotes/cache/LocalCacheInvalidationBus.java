@@ -0,0 +1,28 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Сбрасывает только локальный кэш - подходит, если приложение запущено в одном экземпляре
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.users.cache.invalidation", name = "enabled", havingValue = "false",
+        matchIfMissing = true)
+public class LocalCacheInvalidationBus implements CacheInvalidationBus {
+
+    private final UserCache userCache;
+
+    @Override
+    public Mono<Void> invalidate(Collection<Integer> ids) {
+        return Mono.fromRunnable(() -> ids.forEach(userCache::evict));
+    }
+}
@@ -0,0 +1,32 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.function.IntFunction;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Кэш отключен: каждый запрос идет в загрузчик
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.users.cache", name = "enabled", havingValue = "false")
+public class NoOpUserCache implements UserCache {
+
+    @Override
+    public Mono<User> get(int id, IntFunction<Mono<User>> loader) {
+        return loader.apply(id);
+    }
+
+    @Override
+    public void evict(int id) {
+    }
+
+    @Override
+    public void evictAll() {
+    }
+}
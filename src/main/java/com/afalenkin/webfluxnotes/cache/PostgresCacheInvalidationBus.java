@@ -0,0 +1,230 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.routing.ReadYourWrites;
+import com.afalenkin.webfluxnotes.service.ApplicationUserChangedEvent;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Рассылает идентификаторы измененных пользователей всем экземплярам приложения через LISTEN/NOTIFY PostgreSQL.
+ * <p>
+ * NOTIFY отправляется через общий DatabaseClient, поэтому внутри транзакции уведомление уйдет только после commit.
+ * Каждый экземпляр слушает канал на отдельном соединении в обход пула: такое соединение занято все время
+ * работы приложения и не должно уменьшать пул для запросов.
+ * <p>
+ * Полученные пользователи отмечаются в ReadYourWrites до сброса из кэша: следующая загрузка в кэш
+ * на этом экземпляре читает их из основной БД, а не с реплики, которая может еще не получить изменение.
+ * <p>
+ * Экземпляр получает и собственные уведомления. Это повторно сбрасывает пользователя уже после commit -
+ * на случай, если между локальным сбросом и commit кто-то успел закэшировать старое значение.
+ * <p>
+ * На том же соединении слушается канал application_users_changed, в который триггер
+ * (V5__notify_application_users_changed.sql) пишет имена измененных пользователей приложения. По ним публикуется
+ * {@link ApplicationUserChangedEvent}, и пользователь удаляется из кэшей аутентификации.
+ * <p>
+ * Пока соединение потеряно, уведомления не доходят, поэтому после каждого переподключения
+ * кэши пользователей и аутентификации сбрасываются целиком, а все пользователи на окно read-your-writes
+ * читаются из основной БД. Время, в течение которого может отдаваться устаревший пользователь,
+ * в любом случае ограничено TTL кэша.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.users.cache.invalidation", name = "enabled", havingValue = "true")
+public class PostgresCacheInvalidationBus implements CacheInvalidationBus {
+
+    /**
+     * Размер уведомления в PostgreSQL ограничен 8000 байт - идентификаторы отправляются пачками
+     */
+    static final int IDS_PER_NOTIFICATION = 500;
+
+    /**
+     * Канал задан в триггере миграции V5, поэтому не настраивается
+     */
+    static final String APPLICATION_USERS_CHANNEL = "application_users_changed";
+
+    private static final Pattern CHANNEL = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final String DELIMITER = ",";
+
+    private final UserCache userCache;
+    private final ReadYourWrites readYourWrites;
+    private final ApplicationEventPublisher eventPublisher;
+    private final DatabaseClient databaseClient;
+    private final ConnectionFactory listenerConnectionFactory;
+    private final UsersProperties.Invalidation properties;
+
+    private Disposable listener;
+
+    public PostgresCacheInvalidationBus(UserCache userCache,
+                                        ReadYourWrites readYourWrites,
+                                        ApplicationEventPublisher eventPublisher,
+                                        DatabaseClient databaseClient,
+                                        ConnectionFactory connectionFactory,
+                                        UsersProperties properties) {
+        this.userCache = userCache;
+        this.readYourWrites = readYourWrites;
+        this.eventPublisher = eventPublisher;
+        this.databaseClient = databaseClient;
+        this.listenerConnectionFactory = unwrap(connectionFactory);
+        this.properties = properties.getCache().getInvalidation();
+        if (!CHANNEL.matcher(this.properties.getChannel()).matches()) {
+            throw new IllegalArgumentException("Invalid notification channel name: " + this.properties.getChannel());
+        }
+    }
+
+    @Override
+    public Mono<Void> invalidate(Collection<Integer> ids) {
+        return Mono.fromRunnable(() -> ids.forEach(userCache::evict))
+                .thenMany(Flux.fromIterable(chunks(ids)))
+                .concatMap(this::notifyOthers)
+                .then();
+    }
+
+    @PostConstruct
+    public void listen() {
+        listener = notifications()
+                .map(this::invalidation)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, properties.getMinReconnectDelay())
+                        .maxBackoff(properties.getMaxReconnectDelay())
+                        .transientErrors(true)
+                        .doBeforeRetry(signal -> log.warn("Users cache invalidation listener failed, reconnecting",
+                                signal.failure())))
+                .subscribe(PostgresCacheInvalidationBus::invalidate);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (listener != null) {
+            listener.dispose();
+        }
+    }
+
+    private Flux<Notification> notifications() {
+        return Flux.usingWhen(
+                Mono.from(listenerConnectionFactory.create()).cast(PostgresqlConnection.class),
+                connection -> Flux.concat(listen(connection, properties.getChannel()),
+                                listen(connection, APPLICATION_USERS_CHANNEL))
+                        .doOnComplete(this::onListen)
+                        .thenMany(connection.getNotifications())
+                        .concatWith(Mono.error(() -> new IllegalStateException("Listener connection closed"))),
+                PostgresqlConnection::close);
+    }
+
+    private static Flux<Integer> listen(PostgresqlConnection connection, String channel) {
+        return connection.createStatement("LISTEN " + channel)
+                .execute()
+                .flatMap(PostgresqlResult::getRowsUpdated);
+    }
+
+    private void onListen() {
+        log.info("Listening for users cache invalidation on channels {} and {}",
+                properties.getChannel(), APPLICATION_USERS_CHANNEL);
+        readYourWrites.allUsersWritten();
+        userCache.evictAll();
+        eventPublisher.publishEvent(ApplicationUserChangedEvent.all());
+    }
+
+    /**
+     * Уведомление разбирается до retryWhen: исключение в подписчике отменило бы подписку на канал
+     * без переподключения
+     */
+    private Runnable invalidation(Notification notification) {
+        if (APPLICATION_USERS_CHANNEL.equals(notification.getName())) {
+            String username = notification.getParameter();
+            ApplicationUserChangedEvent event = username == null || username.isEmpty()
+                    ? ApplicationUserChangedEvent.all()
+                    : ApplicationUserChangedEvent.of(username);
+            return () -> eventPublisher.publishEvent(event);
+        }
+        List<Integer> ids = parseIds(notification);
+        return () -> {
+            readYourWrites.usersWritten(ids);
+            ids.forEach(userCache::evict);
+        };
+    }
+
+    private static void invalidate(Runnable invalidation) {
+        try {
+            invalidation.run();
+        } catch (RuntimeException e) {
+            log.error("Failed to invalidate caches", e);
+        }
+    }
+
+    /**
+     * На канал может написать кто угодно, поэтому некорректные идентификаторы пропускаются
+     */
+    private static List<Integer> parseIds(Notification notification) {
+        String payload = notification.getParameter();
+        if (payload == null || payload.isEmpty()) {
+            log.warn("Skipping users cache invalidation without ids");
+            return List.of();
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (String id : payload.split(DELIMITER)) {
+            try {
+                ids.add(Integer.parseInt(id.trim()));
+            } catch (NumberFormatException e) {
+                log.warn("Skipping invalid user id in cache invalidation: {}", id);
+            }
+        }
+        return ids;
+    }
+
+    private Mono<Void> notifyOthers(String payload) {
+        return databaseClient.sql("SELECT pg_notify(:channel, :payload)")
+                .bind("channel", properties.getChannel())
+                .bind("payload", payload)
+                .then();
+    }
+
+    private static List<String> chunks(Collection<Integer> ids) {
+        List<Integer> all = new ArrayList<>(ids);
+        List<String> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += IDS_PER_NOTIFICATION) {
+            chunks.add(all.subList(from, Math.min(from + IDS_PER_NOTIFICATION, all.size())).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(DELIMITER)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Пул отдает соединения, которые после close() возвращаются в пул, поэтому для подписки
+     * берется фабрика, которую пул оборачивает
+     */
+    private static ConnectionFactory unwrap(ConnectionFactory connectionFactory) {
+        ConnectionFactory factory = connectionFactory;
+        while (factory instanceof Wrapped) {
+            Object unwrapped = ((Wrapped<?>) factory).unwrap();
+            if (!(unwrapped instanceof ConnectionFactory)) {
+                break;
+            }
+            factory = (ConnectionFactory) unwrapped;
+        }
+        return factory;
+    }
+}
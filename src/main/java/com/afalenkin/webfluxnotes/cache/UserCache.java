@@ -0,0 +1,23 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import reactor.core.publisher.Mono;
+
+import java.util.function.IntFunction;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Кэш пользователей по идентификатору, работающий по схеме read-through:
+ * при промахе пользователь загружается переданным загрузчиком и сохраняется в кэше.
+ * Реализация выбирается настройкой app.users.cache.enabled.
+ */
+public interface UserCache {
+
+    Mono<User> get(int id, IntFunction<Mono<User>> loader);
+
+    void evict(int id);
+
+    void evictAll();
+}
@@ -0,0 +1,19 @@
+package com.afalenkin.webfluxnotes.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Журнал запросов и их идентификаторы ({@link AccessLogWebFilter})
+ */
+@Configuration(proxyBeanMethods = false)
+public class AccessLogConfig {
+
+    @Bean
+    public AccessLogWebFilter accessLogWebFilter(AccessLogProperties properties) {
+        return new AccessLogWebFilter(properties);
+    }
+}
@@ -0,0 +1,45 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Настройки журнала запросов, задаются в application.yml с префиксом app.access-log
+ */
+@Data
+@ConfigurationProperties(prefix = "app.access-log")
+public class AccessLogProperties {
+
+    /**
+     * Заголовок с идентификатором запроса. Идентификатор из запроса клиента сохраняется,
+     * если его нет - используется идентификатор запроса сервера. Он же возвращается в ответе.
+     */
+    private String correlationHeader = "X-Request-Id";
+
+    /**
+     * Доля записываемых запросов, от 0 до 1
+     */
+    private double sampleRate = 0.1;
+
+    /**
+     * Доля записываемых запросов для отдельных маршрутов, ключ - шаблон маршрута, например /users/{id}
+     */
+    private Map<String, Double> routes = new HashMap<>();
+
+    /**
+     * Записывать все запросы с ошибкой сервера (5xx), исключением или отменой независимо от доли
+     */
+    private boolean errors = true;
+
+    /**
+     * Записывать все запросы не быстрее этого времени независимо от доли
+     */
+    private Duration slowerThan = Duration.ofSeconds(1);
+}
@@ -0,0 +1,160 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Журнал запросов: по строке JSON на запрос в логгер access, который пишется асинхронно (logback-spring.xml),
+ * поэтому запись журнала не задерживает обработку запросов.
+ * Записывается только доля запросов (app.access-log), но запросы с ошибкой сервера, исключением или отменой
+ * и медленные запросы записываются всегда. Строка собирается только для записываемых запросов.
+ * <p>
+ * Каждому запросу назначается идентификатор для сопоставления записей журнала, ответов и логов клиента:
+ * из заголовка запроса, если клиент его передал, иначе идентификатор запроса сервера.
+ * Он возвращается в том же заголовке ответа и в теле ответа с ошибкой (requestId).
+ */
+@Slf4j(topic = AccessLogWebFilter.LOGGER)
+public class AccessLogWebFilter implements WebFilter, Ordered, ExchangeSignals.Listener {
+
+    public static final String LOGGER = "access";
+
+    /**
+     * Атрибут запроса с его идентификатором
+     */
+    public static final String CORRELATION_ID_ATTRIBUTE = AccessLogWebFilter.class.getName() + ".correlationId";
+
+    private static final int MAX_CORRELATION_ID_LENGTH = 64;
+
+    private final AccessLogProperties properties;
+    private final long slowerThanNanos;
+
+    public AccessLogWebFilter(AccessLogProperties properties) {
+        this.properties = properties;
+        this.slowerThanNanos = properties.getSlowerThan().toNanos();
+    }
+
+    /**
+     * Раньше метрик и Spring Security, чтобы идентификатор был и у отклоненных запросов
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String correlationId = exchange.getRequest().getHeaders().getFirst(properties.getCorrelationHeader());
+        if (!isValid(correlationId)) {
+            correlationId = exchange.getRequest().getId();
+        }
+        exchange.getAttributes().put(CORRELATION_ID_ATTRIBUTE, correlationId);
+        exchange.getResponse().getHeaders().set(properties.getCorrelationHeader(), correlationId);
+        return ExchangeSignals.listen(chain.filter(exchange), exchange, this);
+    }
+
+    @Override
+    public void completed(ServerWebExchange exchange, long start) {
+        log(exchange, null, false, start);
+    }
+
+    @Override
+    public void failed(ServerWebExchange exchange, Throwable error, long start) {
+        log(exchange, error, false, start);
+    }
+
+    @Override
+    public void cancelled(ServerWebExchange exchange, long start) {
+        log(exchange, null, true, start);
+    }
+
+    private void log(ServerWebExchange exchange, Throwable error, boolean cancelled, long start) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        int status = ExchangeSignals.status(exchange.getResponse());
+        String route = ExchangeSignals.route(exchange, status);
+        boolean failed = status >= 500 || error != null || cancelled;
+        if (!sampled(route, failed, duration)) {
+            return;
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        StringBuilder entry = new StringBuilder(256);
+        field(entry, "request_id", exchange.getAttribute(CORRELATION_ID_ATTRIBUTE));
+        field(entry, "method", request.getMethodValue());
+        field(entry, "route", route);
+        field(entry, "path", request.getPath().value());
+        entry.append(",\"status\":").append(status);
+        entry.append(",\"duration_us\":").append(duration / 1_000);
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress != null) {
+            field(entry, "remote", remoteAddress.getHostString());
+        }
+        if (error != null) {
+            field(entry, "exception", error.getClass().getName());
+        }
+        if (cancelled) {
+            entry.append(",\"cancelled\":true");
+        }
+        log.info(entry.toString());
+    }
+
+    private boolean sampled(String route, boolean failed, long duration) {
+        if (failed && properties.isErrors() || duration >= slowerThanNanos) {
+            return true;
+        }
+        Double routeRate = properties.getRoutes().get(route);
+        double rate = routeRate != null ? routeRate : properties.getSampleRate();
+        return rate >= 1 || rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Идентификатор клиента попадает в журнал и ответ, поэтому принимается только короткий и без спецсимволов
+     */
+    private static boolean isValid(String correlationId) {
+        if (correlationId == null || correlationId.isEmpty() || correlationId.length() > MAX_CORRELATION_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < correlationId.length(); i++) {
+            char c = correlationId.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_' || c == '.' || c == ':')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Поле строки JSON, первое поле - без запятой: фигурные скобки и время записи добавляет шаблон логгера
+     */
+    private static void field(StringBuilder entry, String name, String value) {
+        if (entry.length() > 0) {
+            entry.append(',');
+        }
+        entry.append('"').append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                entry.append('\\').append(c);
+            } else if (c < 0x20) {
+                entry.append(String.format("\\u%04x", (int) c));
+            } else {
+                entry.append(c);
+            }
+        }
+        entry.append('"');
+    }
+}
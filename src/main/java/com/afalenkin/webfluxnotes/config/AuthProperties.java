@@ -0,0 +1,55 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Настройки аутентификации, задаются в application.yml с префиксом app.auth
+ */
+@Data
+@ConfigurationProperties(prefix = "app.auth")
+public class AuthProperties {
+
+    private Cache cache = new Cache();
+    private Token token = new Token();
+
+    @Data
+    public static class Cache {
+
+        /**
+         * Максимальное количество пользователей в каждом из кэшей аутентификации
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * Сколько живет загруженный из БД пользователь
+         */
+        private Duration userTtl = Duration.ofMinutes(5);
+
+        /**
+         * Сколько живет отметка о том, что пароль пользователя уже был успешно проверен
+         */
+        private Duration credentialsTtl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Token {
+
+        /**
+         * Ключ для подписи токенов (HMAC-SHA256), не короче 32 байт.
+         * Если ключ не задан - он генерируется при старте, и токены перестают быть действительными
+         * после перезапуска и на других экземплярах приложения.
+         */
+        private String secret;
+
+        /**
+         * Время жизни выданного токена
+         */
+        private Duration ttl = Duration.ofMinutes(15);
+    }
+}
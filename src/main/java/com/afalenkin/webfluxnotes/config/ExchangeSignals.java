@@ -0,0 +1,169 @@
+package com.afalenkin.webfluxnotes.config;
+
+import org.reactivestreams.Subscription;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Итог обработки запроса для фильтров, которые записывают его после ответа (метрики, журнал запросов).
+ * Каждый запрос завершается для слушателя ровно одним вызовом:
+ * <ul>
+ * <li>Reactor Netty может отменить подписку на обработку запроса, когда ответ уже отправлен. Такая отмена
+ * считается обычным завершением, отмененным считается только запрос, на который ответ еще не начат.</li>
+ * <li>Ошибку в ответ превращает обработчик ошибок уже после фильтров, поэтому о ней сообщается перед
+ * отправкой ответа, когда известен его статус.</li>
+ * </ul>
+ */
+final class ExchangeSignals {
+
+    private ExchangeSignals() {
+    }
+
+    interface Listener {
+
+        void completed(ServerWebExchange exchange, long start);
+
+        void failed(ServerWebExchange exchange, Throwable error, long start);
+
+        void cancelled(ServerWebExchange exchange, long start);
+    }
+
+    /**
+     * Обработка запроса, о завершении которой узнает слушатель. Время отсчитывается от подписки.
+     * На запрос создается только подписчик.
+     */
+    static Mono<Void> listen(Mono<Void> handling, ServerWebExchange exchange, Listener listener) {
+        return new ListenedExchange(handling, exchange, listener);
+    }
+
+    static int status(ServerHttpResponse response) {
+        Integer status = response.getRawStatusCode();
+        return status == null ? 200 : status;
+    }
+
+    /**
+     * Шаблон маршрута или фиксированное значение, если маршрут не найден: количество значений ограничено
+     */
+    static String route(ServerWebExchange exchange, int status) {
+        PathPattern pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null) {
+            return pattern.getPatternString().isEmpty() ? "root" : pattern.getPatternString();
+        }
+        if (status == 404) {
+            return "NOT_FOUND";
+        }
+        return status >= 300 && status < 400 ? "REDIRECTION" : "UNKNOWN";
+    }
+
+    private static final class ListenedExchange extends MonoOperator<Void, Void> {
+
+        private final ServerWebExchange exchange;
+        private final Listener listener;
+
+        ListenedExchange(Mono<Void> source, ServerWebExchange exchange, Listener listener) {
+            super(source);
+            this.exchange = exchange;
+            this.listener = listener;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super Void> actual) {
+            source.subscribe(new Recorder(actual, exchange, listener));
+        }
+    }
+
+    /**
+     * Сообщает слушателю один раз - по первому из сигналов завершения, ошибки или отмены
+     */
+    private static final class Recorder implements CoreSubscriber<Void>, Subscription {
+
+        private static final AtomicIntegerFieldUpdater<Recorder> RECORDED =
+                AtomicIntegerFieldUpdater.newUpdater(Recorder.class, "recorded");
+
+        private final CoreSubscriber<? super Void> actual;
+        private final ServerWebExchange exchange;
+        private final Listener listener;
+        private final long start = System.nanoTime();
+
+        private Subscription upstream;
+        private volatile int recorded;
+
+        Recorder(CoreSubscriber<? super Void> actual, ServerWebExchange exchange, Listener listener) {
+            this.actual = actual;
+            this.exchange = exchange;
+            this.listener = listener;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (Operators.validate(upstream, subscription)) {
+                upstream = subscription;
+                actual.onSubscribe(this);
+            }
+        }
+
+        @Override
+        public void onNext(Void value) {
+            actual.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            if (first()) {
+                ServerHttpResponse response = exchange.getResponse();
+                if (response.isCommitted()) {
+                    listener.failed(exchange, error, start);
+                } else {
+                    response.beforeCommit(() -> Mono.fromRunnable(() -> listener.failed(exchange, error, start)));
+                }
+            }
+            actual.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            if (first()) {
+                listener.completed(exchange, start);
+            }
+            actual.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            if (first()) {
+                if (exchange.getResponse().isCommitted()) {
+                    listener.completed(exchange, start);
+                } else {
+                    listener.cancelled(exchange, start);
+                }
+            }
+            upstream.cancel();
+        }
+
+        private boolean first() {
+            return recorded == 0 && RECORDED.compareAndSet(this, 0, 1);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.afalenkin.webfluxnotes.config;
+
+import com.afalenkin.webfluxnotes.domain.ApplicationUser;
+import com.afalenkin.webfluxnotes.repository.memory.InMemoryApplicationUserRepository;
+import com.afalenkin.webfluxnotes.repository.memory.InMemoryUsersBulkLoader;
+import com.afalenkin.webfluxnotes.repository.memory.InMemoryUsersRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.util.stream.Collectors;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Хранилище в памяти процесса вместо PostgreSQL, включается профилем memory (--spring.profiles.active=memory).
+ * Без БД и сети время запроса - это только работа самого приложения, поэтому профиль служит базовой линией
+ * для нагрузочного теста и бенчмарков. Данные не переживают перезапуск.
+ * <p>
+ * Автоконфигурация R2DBC и Flyway выключена в application-memory.yml, конфигурации для БД
+ * ({@link R2dbcPoolConfig}, {@link ShardingConfig} и т.д.) в этом профиле не создаются.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@Profile(InMemoryStorageConfig.PROFILE)
+public class InMemoryStorageConfig {
+
+    public static final String PROFILE = "memory";
+
+    @Bean
+    public InMemoryUsersRepository usersRepository(InMemoryStorageProperties properties) {
+        log.info("In-memory storage starts with {} users", properties.getUsers());
+        return new InMemoryUsersRepository(properties.getUsers());
+    }
+
+    @Bean
+    public InMemoryApplicationUserRepository applicationUserRepository(InMemoryStorageProperties properties) {
+        return new InMemoryApplicationUserRepository(properties.getApplicationUsers().stream()
+                .map(user -> new ApplicationUser(
+                        null, user.getName(), user.getUsername(), user.getPassword(), user.getAuthorities()))
+                .collect(Collectors.toList()));
+    }
+
+    @Bean
+    public InMemoryUsersBulkLoader usersBulkLoader(InMemoryUsersRepository usersRepository) {
+        return new InMemoryUsersBulkLoader(usersRepository);
+    }
+}
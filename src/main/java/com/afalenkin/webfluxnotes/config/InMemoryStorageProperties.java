@@ -0,0 +1,37 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Начальные данные хранилища в памяти (профиль {@link InMemoryStorageConfig#PROFILE}), задаются с префиксом app.memory.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.memory")
+public class InMemoryStorageProperties {
+
+    /**
+     * Пользователи приложения, пароли - в том же виде, что в БД (bcrypt)
+     */
+    private List<ApplicationUser> applicationUsers = new ArrayList<>();
+
+    /**
+     * Сколько пользователей создать при запуске (с именами user1, user2, ...)
+     */
+    private int users;
+
+    @Data
+    public static class ApplicationUser {
+
+        private String name;
+        private String username;
+        private String password;
+        private String authorities;
+    }
+}
@@ -0,0 +1,57 @@
+package com.afalenkin.webfluxnotes.config;
+
+import com.afalenkin.webfluxnotes.repository.QueryTimingInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Метрики для Prometheus (/actuator/prometheus):
+ * <ul>
+ * <li>http.server.requests - время запросов по маршрутам и статусам ({@link RequestMetricsWebFilter});</li>
+ * <li>auth.authentication - время аутентификации (см. SecurityConfig);</li>
+ * <li>r2dbc.query - время запросов каждого метода репозиториев ({@link QueryTimingInterceptor});</li>
+ * <li>r2dbc.pool.acquire - время получения соединения из пула ({@link TimedConnectionFactory}).</li>
+ * </ul>
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfig {
+
+    /**
+     * Добавляет таймер запросов в прокси каждого репозитория Spring Data. Стандартная метрика
+     * spring.data.repository.invocations для реактивных репозиториев измеряет только сборку запроса,
+     * поэтому она выключена в application.yml. При шардировании таймер стоит на репозитории Spring Data,
+     * то есть измеряет запрос к каждому шарду отдельно.
+     * <p>
+     * Фабрика создает репозиторий при инициализации, поэтому прокси дополняется до нее.
+     * Метод статический, чтобы постпроцессор создавался без этой конфигурации, а реестр метрик
+     * запрашивается только при создании репозитория.
+     */
+    @Bean
+    public static BeanPostProcessor repositoryQueryTimers(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport) {
+                    ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                            factory.addRepositoryProxyPostProcessor((proxyFactory, information) ->
+                                    proxyFactory.addAdvice(new QueryTimingInterceptor(
+                                            information.getRepositoryInterface().getSimpleName(),
+                                            meterRegistry.getObject()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public RequestMetricsWebFilter requestMetricsWebFilter(MeterRegistry meterRegistry) {
+        return new RequestMetricsWebFilter(meterRegistry);
+    }
+}
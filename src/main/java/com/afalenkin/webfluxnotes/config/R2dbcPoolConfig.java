@@ -0,0 +1,165 @@
+package com.afalenkin.webfluxnotes.config;
+
+import com.afalenkin.webfluxnotes.repository.PreparedStatements;
+import com.afalenkin.webfluxnotes.routing.ReadYourWrites;
+import com.afalenkin.webfluxnotes.routing.ReplicaRoutingConnectionFactory;
+import com.afalenkin.webfluxnotes.routing.ShardRoutingConnectionFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Пул соединений с БД. Настраивается стандартными свойствами spring.r2dbc.pool.*, но создается здесь, чтобы:
+ * <ul>
+ * <li>открыть initialSize соединений еще при запуске - первые запросы не ждут установки соединения;</li>
+ * <li>измерять время ожидания соединения из пула (метрика r2dbc.pool.acquire);</li>
+ * <li>подготавливать частые запросы на каждом новом соединении (см. {@link PreparedStatements});</li>
+ * <li>направлять запросы только на чтение в реплики, если они заданы (см. {@link ReplicaRoutingConnectionFactory});</li>
+ * <li>распределять пользователей по шардам, если они заданы (см. {@link ShardRoutingConnectionFactory}).</li>
+ * </ul>
+ * Размеры пула (r2dbc.pool.acquired, idle, pending и т.д.) публикует actuator - он находит пул внутри обертки.
+ * Исчерпание пула видно по росту r2dbc.pool.pending и r2dbc.pool.acquire, а maxAcquireTime не дает
+ * запросам ждать соединение бесконечно.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@Profile("!" + InMemoryStorageConfig.PROFILE)
+public class R2dbcPoolConfig {
+
+    /**
+     * Имя бина - им же actuator помечает метрики пула
+     */
+    static final String POOL_NAME = "connectionFactory";
+
+    private static final Duration WARMUP_TIMEOUT = Duration.ofSeconds(30);
+
+    @Bean(name = POOL_NAME, destroyMethod = "dispose")
+    public ConnectionFactory connectionFactory(R2dbcProperties properties,
+                                               ReplicasProperties replicasProperties,
+                                               ShardingProperties shardingProperties,
+                                               ReadYourWrites readYourWrites,
+                                               MeterRegistry meterRegistry) {
+        ConnectionFactory primary = primary(properties, replicasProperties, readYourWrites, meterRegistry);
+        List<ShardingProperties.Shard> shards = shardingProperties.getShards();
+        if (shards.isEmpty()) {
+            return primary;
+        }
+
+        List<ConnectionFactory> shardFactories = new ArrayList<>(shardingProperties.count());
+        shardFactories.add(primary);
+        for (int i = 0; i < shards.size(); i++) {
+            ShardingProperties.Shard shard = shards.get(i);
+            String name = ShardRoutingConnectionFactory.shardName(i + 1);
+            shardFactories.add(boundPool(name, shard.getUrl(), shard.getUsername(), shard.getPassword(),
+                    properties, meterRegistry));
+        }
+        log.info("Sharding users across {} databases", shardFactories.size());
+        return new ShardRoutingConnectionFactory(shardFactories);
+    }
+
+    private static ConnectionFactory primary(R2dbcProperties properties,
+                                             ReplicasProperties replicasProperties,
+                                             ReadYourWrites readYourWrites,
+                                             MeterRegistry meterRegistry) {
+        TimedConnectionFactory primary = pool(POOL_NAME, properties.getUrl(), properties.getUsername(),
+                properties.getPassword(), properties, meterRegistry);
+        List<ReplicasProperties.Replica> replicas = replicasProperties.getReplicas();
+        if (replicas.isEmpty()) {
+            return primary;
+        }
+
+        List<TimedConnectionFactory> replicaPools = new ArrayList<>(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            ReplicasProperties.Replica replica = replicas.get(i);
+            replicaPools.add(boundPool(ReplicaRoutingConnectionFactory.replicaName(i), replica.getUrl(),
+                    replica.getUsername(), replica.getPassword(), properties, meterRegistry));
+        }
+        log.info("Routing read-only queries to {} replicas ({})", replicas.size(), replicasProperties.getBalancing());
+        return new ReplicaRoutingConnectionFactory(primary, replicaPools, replicasProperties.getBalancing(),
+                readYourWrites);
+    }
+
+    /**
+     * Пул дополнительной БД (реплики или шарда). Без своих учетных данных используются учетные данные основной БД.
+     * actuator публикует метрики только пула, до которого разворачивается бин - основного, поэтому метрики
+     * дополнительных пулов регистрируются здесь.
+     */
+    private static TimedConnectionFactory boundPool(String name, String url, String username, String password,
+                                                    R2dbcProperties properties, MeterRegistry meterRegistry) {
+        TimedConnectionFactory pool = pool(name, url,
+                StringUtils.hasText(username) ? username : properties.getUsername(),
+                StringUtils.hasText(password) ? password : properties.getPassword(),
+                properties, meterRegistry);
+        new ConnectionPoolMetrics(pool.unwrap(), name, Tags.empty()).bindTo(meterRegistry);
+        return pool;
+    }
+
+    private static TimedConnectionFactory pool(String name, String url, String username, String password,
+                                               R2dbcProperties properties, MeterRegistry meterRegistry) {
+        ConnectionPool pool = new ConnectionPool(
+                poolConfiguration(connectionFactory(url, username, password, properties), properties.getPool()));
+        warmup(name, pool);
+        return new TimedConnectionFactory(pool, name, meterRegistry);
+    }
+
+    private static ConnectionPoolConfiguration poolConfiguration(ConnectionFactory connectionFactory,
+                                                                 R2dbcProperties.Pool pool) {
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .validationDepth(pool.getValidationDepth())
+                .postAllocate(PreparedStatements::prepare);
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        map.from(pool.getMaxIdleTime()).to(builder::maxIdleTime);
+        map.from(pool.getMaxLifeTime()).to(builder::maxLifeTime);
+        map.from(pool.getMaxAcquireTime()).to(builder::maxAcquireTime);
+        map.from(pool.getMaxCreateConnectionTime()).to(builder::maxCreateConnectionTime);
+        map.from(pool.getValidationQuery()).whenHasText().to(builder::validationQuery);
+        return builder.build();
+    }
+
+    private static ConnectionFactory connectionFactory(String url, String username, String password,
+                                                       R2dbcProperties properties) {
+        ConnectionFactoryBuilder builder = ConnectionFactoryBuilder.withUrl(url);
+        if (StringUtils.hasText(username)) {
+            builder.username(username);
+        }
+        if (StringUtils.hasText(password)) {
+            builder.password(password);
+        }
+        builder.configure(options -> properties.getProperties()
+                .forEach((key, value) -> options.option(Option.valueOf(key), value)));
+        return builder.build();
+    }
+
+    /**
+     * Если БД при запуске недоступна - приложение все равно стартует, соединения будут открыты по требованию
+     */
+    private static void warmup(String name, ConnectionPool pool) {
+        try {
+            Integer created = pool.warmup().block(WARMUP_TIMEOUT);
+            log.info("Connection pool {} warmed up with {} connections", name, created);
+        } catch (RuntimeException e) {
+            log.warn("Connection pool " + name + " warm-up failed", e);
+        }
+    }
+}
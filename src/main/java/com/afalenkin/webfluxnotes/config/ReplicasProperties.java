@@ -0,0 +1,51 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Реплики БД для запросов только на чтение, задаются в application.yml с префиксом app.r2dbc.
+ * Пулы реплик настраиваются так же, как основной (spring.r2dbc.pool.*). Если реплик нет - все запросы идут в основную БД.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.r2dbc")
+public class ReplicasProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+
+    /**
+     * Сколько после записи вызывающий читает из основной БД, а не из реплик, чтобы увидеть свои изменения.
+     * Должно быть не меньше обычного отставания реплик. 0 - выключено.
+     */
+    private Duration readYourWrites = Duration.ZERO;
+
+    @Data
+    public static class Replica {
+
+        private String url;
+        private String username;
+        private String password;
+    }
+
+    public enum Balancing {
+
+        /**
+         * Реплики по очереди
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Реплика с наименьшим количеством ожидающих соединения запросов
+         */
+        LEAST_PENDING
+    }
+}
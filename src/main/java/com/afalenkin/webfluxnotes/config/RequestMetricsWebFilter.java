@@ -0,0 +1,119 @@
+package com.afalenkin.webfluxnotes.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.boot.actuate.metrics.web.reactive.server.CancelledServerWebExchangeException;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Время запросов (метрика http.server.requests) с теми же тегами, что у Spring Boot: method, uri - шаблон маршрута,
+ * status, outcome и exception. Заменяет MetricsWebFilter из Spring Boot, который исключен в WebfluxNotesApplication:
+ * <ul>
+ * <li>Reactor Netty может отменить подписку на обработку запроса, когда ответ уже отправлен. MetricsWebFilter
+ * записывает такой запрос как отмененный (exception=CancelledServerWebExchangeException, outcome=UNKNOWN),
+ * и под нагрузкой так терялась заметная часть успешных запросов. Здесь отмена после отправки заголовков ответа
+ * записывается по статусу ответа (см. {@link ExchangeSignals}).</li>
+ * <li>MetricsWebFilter на каждый запрос собирает теги и ищет таймер в реестре. Здесь таймеры успешно обработанных
+ * запросов хранятся по маршруту, методу и статусу, и запись не создает объектов, кроме подписчика.
+ * Запросы с ошибкой или отменой идут через реестр - их немного.</li>
+ * </ul>
+ * Тег uri берется только из шаблонов маршрутов или фиксированных значений, поэтому количество серий ограничено.
+ */
+public class RequestMetricsWebFilter implements WebFilter, Ordered, ExchangeSignals.Listener {
+
+    static final String METRIC = "http.server.requests";
+
+    private static final String NO_EXCEPTION = "None";
+    private static final String CANCELLED = CancelledServerWebExchangeException.class.getSimpleName();
+
+    private static final int MIN_STATUS = 100;
+    private static final int STATUSES = 500;
+    private static final int METHODS = HttpMethod.values().length;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Таймеры маршрута: индекс - метод и статус ответа
+     */
+    private final ConcurrentMap<String, AtomicReferenceArray<Timer>> routes = new ConcurrentHashMap<>();
+
+    public RequestMetricsWebFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Как у MetricsWebFilter: раньше Spring Security, чтобы в метрики попадали и отклоненные запросы
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE + 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return ExchangeSignals.listen(chain.filter(exchange), exchange, this);
+    }
+
+    @Override
+    public void completed(ServerWebExchange exchange, long start) {
+        long duration = System.nanoTime() - start;
+        int status = ExchangeSignals.status(exchange.getResponse());
+        HttpMethod method = exchange.getRequest().getMethod();
+        if (method == null || status < MIN_STATUS || status >= MIN_STATUS + STATUSES) {
+            timer(exchange, status, NO_EXCEPTION).record(duration, TimeUnit.NANOSECONDS);
+            return;
+        }
+        String uri = ExchangeSignals.route(exchange, status);
+        AtomicReferenceArray<Timer> timers = routes.get(uri);
+        if (timers == null) {
+            timers = routes.computeIfAbsent(uri, key -> new AtomicReferenceArray<>(METHODS * STATUSES));
+        }
+        int index = method.ordinal() * STATUSES + status - MIN_STATUS;
+        Timer timer = timers.get(index);
+        if (timer == null) {
+            timer = timer(exchange, status, NO_EXCEPTION);
+            timers.set(index, timer);
+        }
+        timer.record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void failed(ServerWebExchange exchange, Throwable error, long start) {
+        record(exchange, error.getClass().getSimpleName(), start);
+    }
+
+    @Override
+    public void cancelled(ServerWebExchange exchange, long start) {
+        record(exchange, CANCELLED, start);
+    }
+
+    private void record(ServerWebExchange exchange, String exception, long start) {
+        timer(exchange, ExchangeSignals.status(exchange.getResponse()), exception)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(ServerWebExchange exchange, int status, String exception) {
+        return Timer.builder(METRIC)
+                .description("Duration of HTTP server request handling")
+                .tag("method", exchange.getRequest().getMethodValue())
+                .tag("uri", ExchangeSignals.route(exchange, status))
+                .tag("status", String.valueOf(status))
+                .tag("outcome", CANCELLED.equals(exception) ? Outcome.UNKNOWN.name() : Outcome.forStatus(status).name())
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+}
@@ -1,14 +1,21 @@
 package com.afalenkin.webfluxnotes.config;
 
+import com.afalenkin.webfluxnotes.security.CachingReactiveAuthenticationManager;
+import com.afalenkin.webfluxnotes.security.TimedReactiveAuthenticationManager;
+import com.afalenkin.webfluxnotes.security.TokenAuthenticationConverter;
+import com.afalenkin.webfluxnotes.security.TokenAuthenticationManager;
+import com.afalenkin.webfluxnotes.security.TokenService;
 import com.afalenkin.webfluxnotes.service.ApplicationUserDetailsService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
 
 /**
  * @author Alenkin Andrew
@@ -25,12 +32,26 @@ import org.springframework.security.web.server.SecurityWebFilterChain;
 @EnableReactiveMethodSecurity
 public class SecurityConfig {
 
+    /**
+     * Запросы с заголовком "Authorization: Bearer ..." проверяются фильтром токенов полностью в памяти.
+     * HTTP Basic остается для получения токена и для клиентов, которые еще не перешли на токены.
+     * Метрики для Prometheus отдаются без аутентификации: сборщик метрик не хранит учетных данных приложения.
+     */
     @Bean
-    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity httpSecurity) {
+    public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity httpSecurity, TokenService tokenService,
+                                                         MeterRegistry meterRegistry) {
+        AuthenticationWebFilter tokenAuthenticationFilter = new AuthenticationWebFilter(
+                new TimedReactiveAuthenticationManager(new TokenAuthenticationManager(tokenService), "token",
+                        meterRegistry));
+        tokenAuthenticationFilter.setServerAuthenticationConverter(new TokenAuthenticationConverter());
+
         //@formatter:off
         return httpSecurity
                 .csrf().disable()
+                .addFilterAt(tokenAuthenticationFilter, SecurityWebFiltersOrder.AUTHENTICATION)
                 .authorizeExchange()
+                // Поиск пользователей по списку идентификаторов только читает данные
+                .pathMatchers(HttpMethod.POST, "/users/lookup").hasRole("USER")
                 .pathMatchers(HttpMethod.POST, "/users/**").hasRole("ADMIN")
                 .pathMatchers(HttpMethod.PUT, "/users/**").hasRole("ADMIN")
                 .pathMatchers(HttpMethod.DELETE, "/users/**").hasRole("ADMIN")
@@ -39,6 +60,7 @@ public class SecurityConfig {
                         "/swagger-ui.html/**",
                         "v3/api-docs/*",
                         "/webjars/**").permitAll()
+                .pathMatchers(HttpMethod.GET, "/actuator/prometheus").permitAll()
                 .anyExchange().authenticated()
                 .and().formLogin()
                 .and().httpBasic()
@@ -46,8 +68,20 @@ public class SecurityConfig {
         //@formatter:on
     }
 
+    /**
+     * Проверка логина и пароля идет через кэш уже проверенных учетных данных,
+     * и только при промахе - через загрузку пользователя и PasswordEncoder.
+     * Время проверки при промахе (загрузка пользователя и bcrypt) - метрика auth.authentication с type=password,
+     * попадания в кэш видны по метрикам кэша.
+     */
     @Bean
-    public ReactiveAuthenticationManager authenticationManager(ApplicationUserDetailsService userService) {
-        return new UserDetailsRepositoryReactiveAuthenticationManager(userService);
+    public CachingReactiveAuthenticationManager authenticationManager(ApplicationUserDetailsService userService,
+                                                                      AuthProperties authProperties,
+                                                                      MeterRegistry meterRegistry) {
+        return new CachingReactiveAuthenticationManager(
+                new TimedReactiveAuthenticationManager(
+                        new UserDetailsRepositoryReactiveAuthenticationManager(userService), "password", meterRegistry),
+                authProperties.getCache(),
+                meterRegistry);
     }
 }
@@ -0,0 +1,87 @@
+package com.afalenkin.webfluxnotes.config;
+
+import com.afalenkin.webfluxnotes.repository.ShardedUsersRepository;
+import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Шардирование пользователей (см. {@link ShardingProperties}). Пулы шардов создает {@link R2dbcPoolConfig},
+ * здесь - репозиторий, который распределяет запросы по шардам, и миграции схемы на каждом шарде.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@Profile("!" + InMemoryStorageConfig.PROFILE)
+public class ShardingConfig {
+
+    static final String SHARD_INDEX = "shardIndex";
+    static final String SHARD_COUNT = "shardCount";
+
+    /**
+     * Без шардов сервисы работают с репозиторием Spring Data напрямую
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "app.r2dbc.sharding.shards[0].url")
+    public UsersRepository shardedUsersRepository(@Qualifier("usersRepository") UsersRepository usersRepository,
+                                                  ShardingProperties properties) {
+        return new ShardedUsersRepository(usersRepository, properties.count());
+    }
+
+    /**
+     * Миграции выполняются на основной БД с настройками spring.flyway, а затем с теми же настройками на остальных
+     * шардах. Каждый шард получает свой номер и общее количество шардов - из них миграция R__shard_user_ids.sql
+     * строит значение id по умолчанию. Без шардов основная БД - единственный шард с номером 0.
+     */
+    @Bean
+    public FlywayMigrationStrategy shardedMigrationStrategy(ShardingProperties properties,
+                                                            R2dbcProperties r2dbcProperties) {
+        return flyway -> {
+            int count = properties.count();
+            shard(flyway, 0, count).load().migrate();
+
+            List<ShardingProperties.Shard> shards = properties.getShards();
+            for (int i = 0; i < shards.size(); i++) {
+                ShardingProperties.Shard shard = shards.get(i);
+                log.info("Migrating shard {} at {}", i + 1, shard.getJdbcUrl());
+                shard(flyway, i + 1, count)
+                        .dataSource(shard.getJdbcUrl(),
+                                StringUtils.hasText(shard.getUsername())
+                                        ? shard.getUsername() : r2dbcProperties.getUsername(),
+                                StringUtils.hasText(shard.getPassword())
+                                        ? shard.getPassword() : r2dbcProperties.getPassword())
+                        .load()
+                        .migrate();
+            }
+        };
+    }
+
+    /**
+     * Настройки основной БД с номером шарда. Заданные в spring.flyway.placeholders значения сохраняются.
+     */
+    private static FluentConfiguration shard(Flyway flyway, int index, int count) {
+        Map<String, String> placeholders = new HashMap<>(flyway.getConfiguration().getPlaceholders());
+        placeholders.put(SHARD_INDEX, String.valueOf(index));
+        placeholders.put(SHARD_COUNT, String.valueOf(count));
+        return Flyway.configure(flyway.getConfiguration().getClassLoader())
+                .configuration(flyway.getConfiguration())
+                .placeholders(placeholders);
+    }
+}
@@ -0,0 +1,55 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Шарды таблицы users, задаются в application.yml с префиксом app.r2dbc.sharding.
+ * Шард 0 - основная БД (spring.r2dbc, spring.flyway), здесь перечисляются остальные. Если их нет - шардирования нет.
+ * Пользователь хранится на шарде id % count(). Реплики (app.r2dbc.replicas) относятся только к шарду 0.
+ * <p>
+ * Количество шардов входит в идентификаторы уже сохраненных пользователей: при его изменении данные нужно
+ * перераспределить заново.
+ * <p>
+ * Идентификатор - nextval * count() + номер шарда в столбце integer (R__shard_user_ids.sql), поэтому каждый шард
+ * может выдать не больше 2^31 / count() идентификаторов: дальше вставка падает с переполнением integer.
+ * Всего на всех шардах помещается около 2^31 пользователей - как и без шардирования.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.r2dbc.sharding")
+public class ShardingProperties {
+
+    private List<Shard> shards = new ArrayList<>();
+
+    /**
+     * Количество шардов вместе с основной БД
+     */
+    public int count() {
+        return shards.size() + 1;
+    }
+
+    @Data
+    public static class Shard {
+
+        private String url;
+
+        /**
+         * Для миграций схемы через Flyway
+         */
+        private String jdbcUrl;
+
+        /**
+         * Для загрузки через COPY, как app.users.copy.jdbc-url у основной БД: схема задается в адресе (currentSchema)
+         */
+        private String copyJdbcUrl;
+
+        private String username;
+        private String password;
+    }
+}
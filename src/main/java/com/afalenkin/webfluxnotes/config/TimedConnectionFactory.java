@@ -0,0 +1,74 @@
+package com.afalenkin.webfluxnotes.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import io.r2dbc.spi.Wrapped;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Пул соединений, который измеряет время получения соединения.
+ * Успешные и неудачные (например, по maxAcquireTime) получения учитываются раздельно.
+ */
+public class TimedConnectionFactory implements ConnectionFactory, Wrapped<ConnectionFactory>, Disposable {
+
+    static final String ACQUIRE_METRIC = "r2dbc.pool.acquire";
+
+    private final ConnectionPool pool;
+    private final Timer acquired;
+    private final Timer failed;
+
+    public TimedConnectionFactory(ConnectionPool pool, String name, MeterRegistry meterRegistry) {
+        this.pool = pool;
+        this.acquired = acquireTimer(name, "success", meterRegistry);
+        this.failed = acquireTimer(name, "failure", meterRegistry);
+    }
+
+    private static Timer acquireTimer(String name, String result, MeterRegistry meterRegistry) {
+        return Timer.builder(ACQUIRE_METRIC)
+                .description("Time to acquire a connection from the pool")
+                .tag("name", name)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Connection> create() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return pool.create()
+                    .doOnSuccess(connection -> acquired.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(error -> failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public ConnectionFactoryMetadata getMetadata() {
+        return pool.getMetadata();
+    }
+
+    @Override
+    public ConnectionPool unwrap() {
+        return pool;
+    }
+
+    @Override
+    public void dispose() {
+        pool.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return pool.isDisposed();
+    }
+}
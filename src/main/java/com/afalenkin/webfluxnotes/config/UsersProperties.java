@@ -0,0 +1,135 @@
+package com.afalenkin.webfluxnotes.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Positive;
+import java.time.Duration;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Настройки работы с пользователями, задаются в application.yml с префиксом app.users
+ */
+@Data
+@Validated
+@ConfigurationProperties(prefix = "app.users")
+public class UsersProperties {
+
+    private Stream stream = new Stream();
+    private Cache cache = new Cache();
+    @Valid
+    private Batch batch = new Batch();
+    private Copy copy = new Copy();
+    private Export export = new Export();
+    private Loader loader = new Loader();
+
+    @Data
+    public static class Stream {
+
+        /**
+         * Сколько строк драйвер забирает из курсора БД за один раз.
+         * Без этого параметра postgres отдает весь результат запроса целиком.
+         */
+        private int fetchSize = 256;
+
+        /**
+         * Сколько элементов запрашивается у источника за раз при потоковой отдаче клиенту.
+         * Медленный клиент не запрашивает новые элементы - и следующие строки не читаются из БД.
+         */
+        private int limitRate = 256;
+    }
+
+    @Data
+    public static class Batch {
+
+        /**
+         * Сколько пользователей вставляется одним запросом INSERT
+         */
+        @Positive
+        private int chunkSize = 500;
+    }
+
+    @Data
+    public static class Copy {
+
+        /**
+         * Адрес основной БД (шард 0) для загрузки через COPY. Логин и пароль берутся из spring.r2dbc.
+         * Адреса остальных шардов - app.r2dbc.sharding.shards[].copy-jdbc-url.
+         */
+        private String jdbcUrl;
+
+        /**
+         * Сколько строк накапливается перед отправкой очередной порции данных COPY
+         */
+        private int flushRows = 10_000;
+    }
+
+    @Data
+    public static class Export {
+
+        /**
+         * Сколько строк CSV записывается в один буфер ответа
+         */
+        private int rowsPerBuffer = 256;
+    }
+
+    @Data
+    public static class Loader {
+
+        /**
+         * Собирать одновременные загрузки пользователей по идентификатору в один запрос
+         */
+        private boolean batching = false;
+
+        /**
+         * Сколько ждать остальные загрузки после первой
+         */
+        private Duration window = Duration.ofMillis(2);
+
+        private int maxBatchSize = 100;
+    }
+
+    @Data
+    public static class Cache {
+
+        /**
+         * Включает кэш пользователей по идентификатору
+         */
+        private boolean enabled = true;
+
+        private long maximumSize = 10_000;
+
+        /**
+         * Сколько живет запись в кэше. Ограничивает время, в течение которого может отдаваться устаревший
+         * пользователь, если его изменили в обход этого приложения.
+         */
+        private Duration ttl = Duration.ofMinutes(1);
+
+        private Invalidation invalidation = new Invalidation();
+    }
+
+    @Data
+    public static class Invalidation {
+
+        /**
+         * Рассылать сброс кэша остальным экземплярам приложения через LISTEN/NOTIFY PostgreSQL.
+         * Если выключено - кэш сбрасывается только на том экземпляре, который изменил пользователя.
+         * Включено в application.yml, выключенное значение здесь действует, только если свойство не задано.
+         * Через тот же механизм приходят изменения application_users для кэшей аутентификации:
+         * если выключено, измененный пользователь приложения виден по-старому до истечения app.auth.cache.*-ttl.
+         */
+        private boolean enabled = false;
+
+        private String channel = "users_cache_invalidation";
+
+        /**
+         * Задержки между попытками восстановить соединение, на котором слушаются уведомления
+         */
+        private Duration minReconnectDelay = Duration.ofMillis(500);
+        private Duration maxReconnectDelay = Duration.ofSeconds(30);
+    }
+}
@@ -0,0 +1,46 @@
+package com.afalenkin.webfluxnotes.controllers;
+
+import com.afalenkin.webfluxnotes.security.AccessToken;
+import com.afalenkin.webfluxnotes.security.TokenAuthentication;
+import com.afalenkin.webfluxnotes.security.TokenService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Вход по логину и паролю (HTTP Basic) с выдачей короткоживущего токена.
+ * Дальше клиент передает токен в заголовке "Authorization: Bearer ..." и пароль больше не проверяется.
+ */
+@RestController
+@RequestMapping("auth")
+@RequiredArgsConstructor
+public class AuthController {
+
+    private final TokenService tokenService;
+
+    /**
+     * Обменять токен на новый нельзя - иначе украденный токен можно было бы продлевать бесконечно
+     */
+    @PostMapping(path = "/token")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "issue access token for authenticated user",
+            tags = {"auth"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Mono<AccessToken> issueToken(Authentication authentication) {
+        if (authentication instanceof TokenAuthentication) {
+            return Mono.error(() -> new ResponseStatusException(HttpStatus.FORBIDDEN, "Token should be issued by password."));
+        }
+        return Mono.just(tokenService.issue(authentication.getName(), authentication.getAuthorities()));
+    }
+}
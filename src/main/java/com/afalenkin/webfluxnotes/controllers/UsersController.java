@@ -1,14 +1,25 @@
 package com.afalenkin.webfluxnotes.controllers;
 
+import com.afalenkin.webfluxnotes.domain.ImportProgress;
+import com.afalenkin.webfluxnotes.domain.LoadReport;
 import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.domain.UsersPage;
+import com.afalenkin.webfluxnotes.exception.InvalidRequestException;
+import com.afalenkin.webfluxnotes.exception.UserNotFoundException;
 import com.afalenkin.webfluxnotes.service.UserService;
+import com.afalenkin.webfluxnotes.service.UsersCsvWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -16,15 +27,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * @author Alenkin Andrew
@@ -41,7 +55,20 @@ import java.util.List;
 )
 public class UsersController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String CSV_VALUE = "text/csv";
+
+    private static final MediaType CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String ANY_ENCODING = "*";
+
+    private static final InvalidRequestException NOT_NULL_ID =
+            new InvalidRequestException("Object should have nullable ID.");
+    private static final InvalidRequestException NULL_ID = new InvalidRequestException("Object should have ID.");
+
     private final UserService userService;
+    private final UsersCsvWriter csvWriter;
 
     /**
      * Мы не вызываем вручную метод subscribe а просто отдаем Flux в методе контроллера.
@@ -57,21 +84,157 @@ public class UsersController {
         return userService.getAll();
     }
 
+    /**
+     * Если клиент запрашивает application/json - WebFlux собирает весь Flux в один JSON-массив и только потом
+     * отдает его. Для application/x-ndjson и text/event-stream каждый пользователь сериализуется и отправляется
+     * клиенту сразу, как только он прочитан из БД, а скорость чтения из БД определяется скоростью клиента.
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "stream all users from storage",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Flux<User> streamAllUsers() {
+        return userService.stream();
+    }
+
+    /**
+     * Выгрузка всех пользователей в CSV для внешних систем. Строки пишутся в буферы ответа по мере чтения из БД.
+     * Если клиент принимает gzip - ответ сжимается на лету. Ответ зависит от Accept-Encoding,
+     * поэтому кэши получают Vary: Accept-Encoding.
+     */
+    @GetMapping(path = "/export", produces = CSV_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "export all users as CSV",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Mono<Void> exportUsers(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                          String acceptEncoding,
+                                  ServerHttpResponse response) {
+        boolean gzip = acceptsGzip(acceptEncoding);
+        response.getHeaders().setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        response.getHeaders().setContentType(CSV);
+        response.getHeaders().setContentDisposition(ContentDisposition.attachment().filename("users.csv").build());
+        if (gzip) {
+            response.getHeaders().set(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        return response.writeWith(csvWriter.write(userService.stream(), response.bufferFactory(), gzip));
+    }
+
+    /**
+     * Постраничное получение пользователей: GET /users?limit=50&after=100.
+     * Курсор следующей страницы отдается в заголовке ответа, на последней странице заголовка нет.
+     */
+    @GetMapping(params = "limit")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "get page of users ordered by id",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Mono<ResponseEntity<List<User>>> getPage(@RequestParam(value = "limit") int limit,
+                                                    @RequestParam(value = "after", defaultValue = "0") int after) {
+        return userService.getPage(after, limit)
+                .map(this::toPageResponse);
+    }
+
+    /**
+     * Принимает ли клиент gzip с учетом весов: "gzip;q=0" означает отказ от gzip, а "*" относится к gzip,
+     * если gzip не указан отдельно. Вес, который не удалось разобрать, считается нулевым.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipWeight = null;
+        Double anyWeight = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (coding.equals(GZIP) || coding.equals(X_GZIP)) {
+                gzipWeight = weight(parts);
+            } else if (coding.equals(ANY_ENCODING)) {
+                anyWeight = weight(parts);
+            }
+        }
+        if (gzipWeight != null) {
+            return gzipWeight > 0;
+        }
+        return anyWeight != null && anyWeight > 0;
+    }
+
+    private static double weight(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 1 && Character.toLowerCase(parameter.charAt(0)) == 'q'
+                    && parameter.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private ResponseEntity<List<User>> toPageResponse(UsersPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getUsers());
+    }
+
+    /**
+     * Несколько пользователей за один запрос вместо отдельного GET /users/{id} на каждого: GET /users?ids=1,2,3
+     */
+    @GetMapping(params = "ids")
+    @Operation(summary = "get users by ids",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Flux<User> getByIds(@RequestParam(value = "ids") List<Integer> ids) {
+        return userService.getByIds(ids);
+    }
+
+    /**
+     * То же, что GET /users?ids=..., для списков, которые не помещаются в URL
+     */
+    @PostMapping(path = "/lookup")
+    @Operation(summary = "get users by ids from request body",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Flux<User> lookup(@RequestBody List<Integer> ids) {
+        return userService.getByIds(ids);
+    }
+
+    /**
+     * Поиск по имени: GET /users/search?q=ivan - по подстроке, GET /users/search?q=iv&prefix=true - по началу имени.
+     * Следующая страница запрашивается с after, равным идентификатору последнего полученного пользователя.
+     * Для application/x-ndjson пользователи отдаются по мере чтения из БД.
+     */
+    @GetMapping(path = "/search", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "search users by name",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Flux<User> search(@RequestParam(value = "q") String query,
+                             @RequestParam(value = "prefix", defaultValue = "false") boolean prefix,
+                             @RequestParam(value = "after", defaultValue = "0") int after,
+                             @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return userService.search(query, prefix, after, limit);
+    }
+
     /**
      * Если в БД отсутствует запись с искомым идентификатором - этот метод вернет пустой моно и статус ответа 200.
      * Нам нужно чтобы в таком случае выбрасывалось исключение и возвращался ответ со статусом 400.
      * Для этого используется switchIfEmpty, который в случае, если из сервиса вернулся пустой моно -
-     * создаст новый моно который содержит ошибку и отдаст его.
+     * отдаст моно с ошибкой. Аргумент switchIfEmpty вычисляется при каждом вызове, в том числе когда
+     * пользователь найден, поэтому исключение создано заранее, а не на каждый запрос.
      */
     @GetMapping(path = "/{id}")
     @ResponseStatus(HttpStatus.OK)
     @Operation(tags = {"users"}, security = @SecurityRequirement(name = "Basic Authentication"))
     public Mono<User> getById(@PathVariable(value = "id", required = true) int id) {
         return userService.getById(id)
-                .switchIfEmpty(Mono.error(
-                        new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ooops, something went wrong..."))
-                )
-                .log();
+                .switchIfEmpty(Mono.error(UserNotFoundException.INSTANCE));
     }
 
     @PostMapping
@@ -79,7 +242,7 @@ public class UsersController {
     @Operation(tags = {"users"}, security = @SecurityRequirement(name = "Basic Authentication"))
     public Mono<User> save(@Valid @RequestBody User user) {
         if (user.getId() != null) {
-            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Object should have nullable ID."));
+            return Mono.error(NOT_NULL_ID);
         }
         return userService.save(user);
     }
@@ -91,13 +254,40 @@ public class UsersController {
         return userService.save(users);
     }
 
+    /**
+     * Импорт большого количества пользователей: тело запроса читается построчно в формате NDJSON,
+     * а не собирается целиком в список. В ответ по мере записи отправляется ход импорта.
+     */
+    @PostMapping(path = "/import",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "import users from NDJSON stream",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Flux<ImportProgress> importUsers(@RequestBody Flux<User> users) {
+        return userService.importUsers(users);
+    }
+
+    /**
+     * Массовая загрузка через COPY для ночных выгрузок: быстрее импорта, но записывает все одной командой
+     * и возвращает только итоговый отчет.
+     */
+    @PostMapping(path = "/load", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "bulk load users from NDJSON stream with COPY",
+            tags = {"users"},
+            security = @SecurityRequirement(name = "Basic Authentication"))
+    public Mono<LoadReport> loadUsers(@RequestBody Flux<User> users) {
+        return userService.load(users);
+    }
+
     @PutMapping
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(tags = {"users"}, security = @SecurityRequirement(name = "Basic Authentication"))
     public Mono<Void> update(@Valid @RequestBody User user) {
         if (user.getId() == null) {
-            return Mono.error(
-                    new ResponseStatusException(HttpStatus.BAD_REQUEST, "Object should have ID."));
+            return Mono.error(NULL_ID);
         }
         return userService.update(user);
     }
@@ -1,24 +1,25 @@
 package com.afalenkin.webfluxnotes.domain;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.relational.core.mapping.Table;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * @author Alenkin Andrew
  * oxqq@ya.ru
  */
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
 @Table("application_users")
 public class ApplicationUser implements UserDetails {
@@ -30,11 +31,38 @@ public class ApplicationUser implements UserDetails {
     private String password;
     private String authorities;
 
+    /**
+     * Spring Security запрашивает роли несколько раз за запрос (аутентификация, hasRole, @PreAuthorize).
+     * Строка ролей разбирается только при первом обращении, дальше отдается тот же неизменяемый набор.
+     */
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Set<GrantedAuthority> grantedAuthorities;
+
+    public ApplicationUser(Integer id, String name, String username, String password, String authorities) {
+        this.id = id;
+        this.name = name;
+        this.username = username;
+        this.password = password;
+        this.authorities = authorities;
+    }
+
     @Override
-    public Collection<? extends GrantedAuthority> getAuthorities() {
-        return Arrays.stream(authorities.split(","))
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+    public Set<GrantedAuthority> getAuthorities() {
+        Set<GrantedAuthority> parsed = grantedAuthorities;
+        if (parsed == null) {
+            parsed = Authorities.parse(authorities);
+            grantedAuthorities = parsed;
+        }
+        return parsed;
+    }
+
+    public void setAuthorities(String authorities) {
+        this.authorities = authorities;
+        this.grantedAuthorities = null;
     }
 
     @Override
@@ -0,0 +1,63 @@
+package com.afalenkin.webfluxnotes.domain;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Разбор строки ролей вида "ROLE_ADMIN,ROLE_USER" в неизменяемый набор GrantedAuthority.
+ * Различных комбинаций ролей в системе немного, поэтому результаты разбора переиспользуются:
+ * у всех пользователей с одинаковой строкой ролей будет один и тот же экземпляр набора,
+ * а одинаковые роли в разных наборах - это один и тот же объект.
+ */
+public final class Authorities {
+
+    /**
+     * Ограничение на количество запомненных комбинаций, чтобы необычные данные не переполнили память.
+     * Комбинации сверх лимита просто разбираются заново.
+     */
+    private static final int MAX_INTERNED = 1024;
+
+    private static final Map<String, Set<GrantedAuthority>> COMBINATIONS = new ConcurrentHashMap<>();
+    private static final Map<String, GrantedAuthority> AUTHORITIES = new ConcurrentHashMap<>();
+
+    private Authorities() {
+    }
+
+    public static Set<GrantedAuthority> parse(String authorities) {
+        if (authorities == null || authorities.isBlank()) {
+            return Collections.emptySet();
+        }
+        Set<GrantedAuthority> parsed = COMBINATIONS.get(authorities);
+        if (parsed != null) {
+            return parsed;
+        }
+        parsed = split(authorities);
+        if (COMBINATIONS.size() >= MAX_INTERNED) {
+            return parsed;
+        }
+        Set<GrantedAuthority> existing = COMBINATIONS.putIfAbsent(authorities, parsed);
+        return existing != null ? existing : parsed;
+    }
+
+    private static Set<GrantedAuthority> split(String authorities) {
+        Set<GrantedAuthority> parsed = new LinkedHashSet<>();
+        for (String authority : authorities.split(",")) {
+            String role = authority.trim();
+            if (!role.isEmpty()) {
+                parsed.add(AUTHORITIES.size() < MAX_INTERNED
+                        ? AUTHORITIES.computeIfAbsent(role, SimpleGrantedAuthority::new)
+                        : new SimpleGrantedAuthority(role));
+            }
+        }
+        return Collections.unmodifiableSet(parsed);
+    }
+}
@@ -0,0 +1,27 @@
+package com.afalenkin.webfluxnotes.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Ход потокового импорта пользователей: сколько пользователей записано и сколько отброшено
+ * при проверке с начала импорта.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ImportProgress {
+
+    private long imported;
+    private long failed;
+
+    public ImportProgress plus(ImportProgress other) {
+        return new ImportProgress(imported + other.imported, failed + other.failed);
+    }
+}
@@ -0,0 +1,31 @@
+package com.afalenkin.webfluxnotes.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Итог массовой загрузки пользователей через COPY
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class LoadReport {
+
+    private long loaded;
+    private long failed;
+    private long durationMillis;
+    private long rowsPerSecond;
+
+    public static LoadReport of(long loaded, long failed, Duration duration) {
+        long nanos = Math.max(duration.toNanos(), 1);
+        return new LoadReport(loaded, failed, duration.toMillis(), loaded * 1_000_000_000L / nanos);
+    }
+}
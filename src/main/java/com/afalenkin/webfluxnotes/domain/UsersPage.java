@@ -0,0 +1,26 @@
+package com.afalenkin.webfluxnotes.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Страница пользователей при keyset-пагинации.
+ * nextCursor - идентификатор последнего пользователя на странице, с которого начнется следующая страница.
+ * Если следующей страницы нет - nextCursor равен null.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class UsersPage {
+
+    private List<User> users;
+    private Integer nextCursor;
+}
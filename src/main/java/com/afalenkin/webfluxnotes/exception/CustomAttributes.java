@@ -1,7 +1,9 @@
 package com.afalenkin.webfluxnotes.exception;
 
+import com.afalenkin.webfluxnotes.config.AccessLogWebFilter;
 import org.springframework.boot.web.error.ErrorAttributeOptions;
 import org.springframework.boot.web.reactive.error.DefaultErrorAttributes;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.server.ResponseStatusException;
@@ -34,6 +36,18 @@ public class CustomAttributes extends DefaultErrorAttributes {
             errorAttributes.put("message", responseStatusException.getMessage());
         }
 
+        // Статус ошибок API берется из исключения, тело ответа такое же, как для ResponseStatusException
+        if (throwable instanceof DomainException) {
+            HttpStatus status = ((DomainException) throwable).getStatus();
+            errorAttributes.put("status", status.value());
+            errorAttributes.put("error", status.getReasonPhrase());
+            errorAttributes.put("message", status + " \"" + throwable.getMessage() + "\"");
+        }
+
+        // Идентификатор запроса - тот же, что в заголовке ответа и журнале запросов
+        request.attribute(AccessLogWebFilter.CORRELATION_ID_ATTRIBUTE)
+                .ifPresent(correlationId -> errorAttributes.put("requestId", correlationId));
+
         errorAttributes.put("developer", "Alenkin Andrew");
         return errorAttributes;
     }
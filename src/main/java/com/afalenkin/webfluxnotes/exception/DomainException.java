@@ -0,0 +1,25 @@
+package com.afalenkin.webfluxnotes.exception;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Ошибка запроса с известным статусом ответа, ответ формирует GlobalExceptionHandler (см. CustomAttributes).
+ * <p>
+ * Такие ошибки - часть обычной работы API, и трассировка стека для них не нужна: она не сохраняется,
+ * поэтому исключение можно создать один раз и выбрасывать повторно. Подавленные исключения тоже
+ * не сохраняются - иначе Reactor накапливал бы их в общем экземпляре.
+ */
+@Getter
+public abstract class DomainException extends RuntimeException {
+
+    private final HttpStatus status;
+
+    protected DomainException(HttpStatus status, String reason) {
+        super(reason, null, false, false);
+        this.status = status;
+    }
+}
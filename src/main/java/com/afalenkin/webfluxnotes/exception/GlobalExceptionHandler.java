@@ -69,7 +69,8 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler {
         // Они содержатся в нем в виде мапы
         Map<String, Object> errorAttributes = getErrorAttributes(request, errorAttributeOptions);
 
-        // статус ответа можно получить из деталей, полученных из запроса. Если его там нет - вернем дефолтное значение
+        // статус ответа можно получить из деталей, полученных из запроса. Если его там нет - вернем дефолтное значение.
+        // Для DomainException статус берется из исключения (см. CustomAttributes)
         int status = (int) Optional.ofNullable(errorAttributes.get("status")).orElse(500);
 
         return ServerResponse
@@ -0,0 +1,16 @@
+package com.afalenkin.webfluxnotes.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Некорректные параметры или тело запроса. Экземпляры создаются заранее, по одному на каждое сообщение.
+ */
+public final class InvalidRequestException extends DomainException {
+
+    public InvalidRequestException(String reason) {
+        super(HttpStatus.BAD_REQUEST, reason);
+    }
+}
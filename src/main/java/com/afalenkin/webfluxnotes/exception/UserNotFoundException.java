@@ -0,0 +1,18 @@
+package com.afalenkin.webfluxnotes.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Пользователь не найден. По договоренности API отвечает на это статусом 400.
+ */
+public final class UserNotFoundException extends DomainException {
+
+    public static final UserNotFoundException INSTANCE = new UserNotFoundException();
+
+    private UserNotFoundException() {
+        super(HttpStatus.BAD_REQUEST, "Ooops, something went wrong...");
+    }
+}
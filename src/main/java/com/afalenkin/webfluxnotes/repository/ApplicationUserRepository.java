@@ -1,6 +1,7 @@
 package com.afalenkin.webfluxnotes.repository;
 
 import com.afalenkin.webfluxnotes.domain.ApplicationUser;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Mono;
 
@@ -10,5 +11,6 @@ import reactor.core.publisher.Mono;
  */
 public interface ApplicationUserRepository extends ReactiveCrudRepository<ApplicationUser, Integer> {
 
+    @Query(PreparedStatements.FIND_APPLICATION_USER_BY_USERNAME)
     Mono<ApplicationUser> findByUsername(String username);
 }
@@ -0,0 +1,227 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.config.InMemoryStorageConfig;
+import com.afalenkin.webfluxnotes.config.ShardingProperties;
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Загрузка пользователей через COPY users (name) FROM STDIN в формате CSV - самый быстрый способ
+ * записать в PostgreSQL большое количество строк: нет разбора INSERT и обмена сообщениями на каждую строку.
+ * <p>
+ * В используемой версии r2dbc-postgresql нет COPY, поэтому данные передаются через CopyManager JDBC драйвера.
+ * Все обращения к JDBC выполняются на boundedElastic, а порции данных пишутся строго последовательно.
+ * <p>
+ * Идентификатор пользователя выдает БД и он определяет шард (R__shard_user_ids.sql), поэтому порции данных
+ * по очереди отправляются на все шарды - на каждом своя команда COPY в транзакции.
+ * При ошибке или отмене во время загрузки ни на одном шарде не останется ни одной строки. Транзакции
+ * фиксируются по очереди после окончания всех COPY: если фиксация на одном из шардов не удалась, на уже
+ * зафиксированных строки останутся.
+ */
+@Component
+@Profile("!" + InMemoryStorageConfig.PROFILE)
+public class PostgresUsersBulkLoader implements UsersBulkLoader {
+
+    private static final String COPY_SQL = "COPY users (name) FROM STDIN WITH (FORMAT csv)";
+
+    /**
+     * Индекс в списке - номер шарда
+     */
+    private final List<PGSimpleDataSource> dataSources = new ArrayList<>();
+
+    public PostgresUsersBulkLoader(UsersProperties properties, ShardingProperties shardingProperties,
+                                   R2dbcProperties r2dbcProperties) {
+        dataSources.add(dataSource(properties.getCopy().getJdbcUrl(),
+                r2dbcProperties.getUsername(), r2dbcProperties.getPassword()));
+        for (ShardingProperties.Shard shard : shardingProperties.getShards()) {
+            dataSources.add(dataSource(shard.getCopyJdbcUrl(),
+                    StringUtils.hasText(shard.getUsername()) ? shard.getUsername() : r2dbcProperties.getUsername(),
+                    StringUtils.hasText(shard.getPassword()) ? shard.getPassword() : r2dbcProperties.getPassword()));
+        }
+    }
+
+    @Override
+    public Mono<Long> copy(Flux<User> users, int flushRows) {
+        return Mono.usingWhen(
+                Mono.fromCallable(this::openAll).subscribeOn(Schedulers.boundedElastic()),
+                sessions -> users.map(PostgresUsersBulkLoader::toCsv)
+                        .buffer(flushRows)
+                        .index()
+                        .concatMap(chunk -> Mono.fromRunnable(() -> shard(sessions, chunk.getT1()).write(chunk.getT2()))
+                                .subscribeOn(Schedulers.boundedElastic()), 1)
+                        .then(Mono.fromCallable(() -> endAll(sessions)).subscribeOn(Schedulers.boundedElastic())),
+                sessions -> Mono.fromRunnable(() -> forEach(sessions, CopySession::close, null))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                (sessions, error) -> Mono.fromRunnable(() -> forEach(sessions, CopySession::cancel, error))
+                        .subscribeOn(Schedulers.boundedElastic()),
+                sessions -> Mono.fromRunnable(() -> forEach(sessions, CopySession::cancel, null))
+                        .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    private static PGSimpleDataSource dataSource(String url, String username, String password) {
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        if (url != null) {
+            dataSource.setURL(url);
+        }
+        dataSource.setUser(username);
+        dataSource.setPassword(password);
+        return dataSource;
+    }
+
+    private List<CopySession> openAll() throws SQLException {
+        List<CopySession> sessions = new ArrayList<>(dataSources.size());
+        try {
+            for (int shard = 0; shard < dataSources.size(); shard++) {
+                sessions.add(open(dataSources.get(shard), shard));
+            }
+            return sessions;
+        } catch (SQLException | RuntimeException e) {
+            forEach(sessions, CopySession::cancel, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Закрывает или отменяет все сессии, даже если на части шардов это не удалось: иначе у остальных
+     * осталось бы открытое соединение и незавершенный COPY. Ошибки добавляются к исходной ошибке загрузки,
+     * если она есть, а без нее первая ошибка выбрасывается после обхода всех сессий.
+     */
+    private static void forEach(List<CopySession> sessions, Consumer<CopySession> action, Throwable error) {
+        RuntimeException failure = null;
+        for (CopySession session : sessions) {
+            try {
+                action.accept(session);
+            } catch (RuntimeException e) {
+                if (error != null) {
+                    error.addSuppressed(e);
+                } else if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static CopySession shard(List<CopySession> sessions, long chunk) {
+        return sessions.get((int) (chunk % sessions.size()));
+    }
+
+    /**
+     * Сначала заканчиваются все COPY, чтобы ошибка на любом шарде откатила загрузку везде
+     */
+    private static long endAll(List<CopySession> sessions) throws SQLException {
+        long loaded = 0;
+        for (CopySession session : sessions) {
+            loaded += session.end();
+        }
+        for (CopySession session : sessions) {
+            session.commit();
+        }
+        return loaded;
+    }
+
+    private static CopySession open(PGSimpleDataSource dataSource, int shard) throws SQLException {
+        if (dataSource.getURL() == null) {
+            throw new IllegalStateException(shard == 0
+                    ? "app.users.copy.jdbc-url is not configured"
+                    : "app.r2dbc.sharding.shards[" + (shard - 1) + "].copy-jdbc-url is not configured");
+        }
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            return new CopySession(connection, copyIn);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Имя всегда берется в кавычки: пустая строка без кавычек в CSV означает NULL
+     */
+    static String toCsv(User user) {
+        return '"' + user.getName().replace("\"", "\"\"") + "\"\n";
+    }
+
+    @RequiredArgsConstructor
+    private static final class CopySession {
+
+        private final Connection connection;
+        private final CopyIn copyIn;
+
+        private void write(List<String> lines) {
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            for (String line : lines) {
+                chunk.writeBytes(line.getBytes(StandardCharsets.UTF_8));
+            }
+            try {
+                copyIn.writeToCopy(chunk.toByteArray(), 0, chunk.size());
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to write users to COPY", e);
+            }
+        }
+
+        private long end() throws SQLException {
+            return copyIn.endCopy();
+        }
+
+        private void commit() throws SQLException {
+            connection.commit();
+        }
+
+        private void close() {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to close COPY connection", e);
+            }
+        }
+
+        /**
+         * Соединение закрывается, даже если отменить COPY не удалось
+         */
+        private void cancel() {
+            try {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            } catch (SQLException e) {
+                IllegalStateException failure = new IllegalStateException("Failed to cancel COPY", e);
+                try {
+                    close();
+                } catch (IllegalStateException closeFailure) {
+                    failure.addSuppressed(closeFailure);
+                }
+                throw failure;
+            }
+            close();
+        }
+    }
+}
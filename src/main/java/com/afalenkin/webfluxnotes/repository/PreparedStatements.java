@@ -0,0 +1,53 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import io.r2dbc.spi.Connection;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Самые частые запросы приложения. Драйвер Postgres кэширует подготовленные запросы на каждом соединении
+ * (spring.r2dbc.properties.preparedStatementCacheQueries), ключ кэша - текст запроса и типы параметров.
+ * Поэтому тексты зафиксированы здесь и используются и в репозиториях, и при подготовке нового соединения:
+ * первый запрос пользователя уже не тратит время на разбор и планирование.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class PreparedStatements {
+
+    public static final String FIND_USER_BY_ID = "SELECT * FROM users WHERE id = $1";
+
+    public static final String FIND_APPLICATION_USER_BY_USERNAME = "SELECT * FROM application_users WHERE username = $1";
+
+    /**
+     * Значения параметров, которые не находят ни одной строки, - нужен только подготовленный запрос.
+     * Тип значения должен совпадать с тем, что передает репозиторий, иначе получится другой ключ кэша.
+     */
+    private static final Map<String, Object> HOT_STATEMENTS = Map.of(
+            FIND_USER_BY_ID, -1,
+            FIND_APPLICATION_USER_BY_USERNAME, "");
+
+    /**
+     * Подготавливает частые запросы на новом соединении. Ошибка не мешает выдать соединение из пула -
+     * запрос будет подготовлен при первом реальном выполнении.
+     */
+    public static Mono<Void> prepare(Connection connection) {
+        return Flux.fromIterable(HOT_STATEMENTS.entrySet())
+                .concatMap(statement -> Flux.from(connection.createStatement(statement.getKey())
+                                .bind(0, statement.getValue())
+                                .execute())
+                        .concatMap(result -> result.map((row, metadata) -> row)))
+                .then()
+                .onErrorResume(e -> {
+                    log.warn("Failed to prepare statements on new connection", e);
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,196 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+import reactor.core.publisher.Operators;
+import reactor.util.context.Context;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Измеряет время запросов репозитория (метрика r2dbc.query) с тегами repository, method и result.
+ * Вызов метода реактивного репозитория только собирает запрос, поэтому время считается от подписки
+ * до результата: для Mono - до значения или пустого завершения, для Flux - до завершения.
+ * Ошибка - result=failure, отмена до результата - result=cancelled.
+ * <p>
+ * На каждый запрос создается только подписчик, который и измеряет время. Таймеры метода создаются
+ * при первом вызове и дальше берутся из карты по Method, без поиска в реестре.
+ */
+public class QueryTimingInterceptor implements MethodInterceptor {
+
+    static final String METRIC = "r2dbc.query";
+
+    private final String repository;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<Method, Timers> timers = new ConcurrentHashMap<>();
+
+    public QueryTimingInterceptor(String repository, MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (result instanceof Mono) {
+            return new TimedMono<>((Mono<Object>) result, timers(invocation.getMethod()));
+        }
+        if (result instanceof Flux) {
+            return new TimedFlux<>((Flux<Object>) result, timers(invocation.getMethod()));
+        }
+        return result;
+    }
+
+    private Timers timers(Method method) {
+        Timers methodTimers = timers.get(method);
+        return methodTimers != null
+                ? methodTimers
+                : timers.computeIfAbsent(method, key -> new Timers(repository, key.getName(), meterRegistry));
+    }
+
+    private static class Timers {
+
+        private final Timer succeeded;
+        private final Timer failed;
+        private final Timer cancelled;
+
+        Timers(String repository, String method, MeterRegistry meterRegistry) {
+            this.succeeded = timer(repository, method, "success", meterRegistry);
+            this.failed = timer(repository, method, "failure", meterRegistry);
+            this.cancelled = timer(repository, method, "cancelled", meterRegistry);
+        }
+
+        private static Timer timer(String repository, String method, String result, MeterRegistry meterRegistry) {
+            return Timer.builder(METRIC)
+                    .description("Time from subscription to result of a repository query")
+                    .tag("repository", repository)
+                    .tag("method", method)
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Оператор без слияния (fusion): подписчик с таймером должен получать все сигналы источника
+     */
+    private static final class TimedMono<T> extends MonoOperator<T, T> {
+
+        private final Timers timers;
+
+        TimedMono(Mono<T> source, Timers timers) {
+            super(source);
+            this.timers = timers;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super T> actual) {
+            source.subscribe(new TimingSubscriber<>(actual, timers, true));
+        }
+    }
+
+    private static final class TimedFlux<T> extends FluxOperator<T, T> {
+
+        private final Timers timers;
+
+        TimedFlux(Flux<T> source, Timers timers) {
+            super(source);
+            this.timers = timers;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super T> actual) {
+            source.subscribe(new TimingSubscriber<>(actual, timers, false));
+        }
+    }
+
+    /**
+     * Записывает время один раз: подписка может быть отменена уже после результата, например Mono
+     * отменяет источник, получив значение. Такая отмена не считается.
+     */
+    private static final class TimingSubscriber<T> implements CoreSubscriber<T>, Subscription {
+
+        private static final AtomicIntegerFieldUpdater<TimingSubscriber> RECORDED =
+                AtomicIntegerFieldUpdater.newUpdater(TimingSubscriber.class, "recorded");
+
+        private final CoreSubscriber<? super T> actual;
+        private final Timers timers;
+        private final boolean mono;
+        private final long start = System.nanoTime();
+
+        private Subscription upstream;
+        private volatile int recorded;
+
+        TimingSubscriber(CoreSubscriber<? super T> actual, Timers timers, boolean mono) {
+            this.actual = actual;
+            this.timers = timers;
+            this.mono = mono;
+        }
+
+        @Override
+        public Context currentContext() {
+            return actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (Operators.validate(upstream, subscription)) {
+                upstream = subscription;
+                actual.onSubscribe(this);
+            }
+        }
+
+        @Override
+        public void onNext(T value) {
+            if (mono) {
+                record(timers.succeeded);
+            }
+            actual.onNext(value);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            record(timers.failed);
+            actual.onError(error);
+        }
+
+        @Override
+        public void onComplete() {
+            record(timers.succeeded);
+            actual.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            record(timers.cancelled);
+            upstream.cancel();
+        }
+
+        private void record(Timer timer) {
+            if (recorded == 0 && RECORDED.compareAndSet(this, 0, 1)) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
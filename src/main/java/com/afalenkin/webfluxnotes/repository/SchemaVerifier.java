@@ -0,0 +1,134 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.config.InMemoryStorageConfig;
+import com.afalenkin.webfluxnotes.config.ShardingProperties;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Проверяет при запуске, что у таблиц есть индексы, на которые рассчитаны частые запросы.
+ * Без индекса запрос не падает, а тихо превращается в последовательное чтение таблицы,
+ * поэтому приложение с неполной схемой лучше не запускать вовсе.
+ * Проверяется наличие индекса по колонке (или выражению) и его тип, а не имя: индекс мог быть создан вручную
+ * под другим именем.
+ * <p>
+ * Схема проверяется на каждом шарде: миграции выполняются на шардах по отдельности, и индекс, недостроенный на одном
+ * из них, замедлит только запросы пользователей этого шарда.
+ */
+@Slf4j
+@Component
+@Profile("!" + InMemoryStorageConfig.PROFILE)
+@DependsOnDatabaseInitialization
+@RequiredArgsConstructor
+public class SchemaVerifier {
+
+    private static final String BTREE = "btree";
+    private static final String GIN = "gin";
+
+    static final List<RequiredIndex> REQUIRED_INDEXES = List.of(
+            new RequiredIndex("users", "id", BTREE, true),
+            new RequiredIndex("users", "name", GIN, false),
+            new RequiredIndex("users", "lower(name::text)", BTREE, false),
+            new RequiredIndex("application_users", "id", BTREE, true),
+            new RequiredIndex("application_users", "username", BTREE, true));
+
+    /**
+     * Индексы текущей схемы: первая колонка или выражение индекса, его тип и готовность.
+     * Недостроенные (indisvalid = false) планировщик не использует - например, после неудачного
+     * CREATE INDEX CONCURRENTLY.
+     */
+    private static final String INDEXES = "SELECT t.relname AS table_name, pg_get_indexdef(i.indexrelid, 1, true) AS index_key, "
+            + "am.amname AS method, i.indisunique AS is_unique, i.indisvalid AS is_valid "
+            + "FROM pg_index i "
+            + "JOIN pg_class t ON t.oid = i.indrelid "
+            + "JOIN pg_namespace n ON n.oid = t.relnamespace "
+            + "JOIN pg_class c ON c.oid = i.indexrelid "
+            + "JOIN pg_am am ON am.oid = c.relam "
+            + "WHERE n.nspname = current_schema()";
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final DatabaseClient databaseClient;
+    private final ShardingProperties shardingProperties;
+
+    @PostConstruct
+    public void verify() {
+        List<String> problems = new ArrayList<>();
+        for (int shard = 0; shard < shardingProperties.count(); shard++) {
+            Map<Boolean, Set<RequiredIndex>> indexes = indexes(shard);
+            problems.addAll(problems(shard, indexes.get(true), indexes.get(false)));
+        }
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Database indexes are not ready: " + String.join("; ", problems));
+        }
+        log.info("Verified {} database indexes on {} shards", REQUIRED_INDEXES.size(), shardingProperties.count());
+    }
+
+    /**
+     * Индексы шарда, разделенные на готовые (true) и недостроенные (false)
+     */
+    private Map<Boolean, Set<RequiredIndex>> indexes(int shard) {
+        return databaseClient.sql(INDEXES)
+                .map((row, metadata) -> Map.entry(
+                        Boolean.TRUE.equals(row.get("is_valid", Boolean.class)),
+                        new RequiredIndex(
+                                row.get("table_name", String.class),
+                                row.get("index_key", String.class),
+                                row.get("method", String.class),
+                                Boolean.TRUE.equals(row.get("is_unique", Boolean.class)))))
+                .all()
+                .collect(Collectors.partitioningBy(Map.Entry::getKey,
+                        Collectors.mapping(Map.Entry::getValue, Collectors.toSet())))
+                .contextWrite(DataSourceRoutes.shard(shard))
+                .block(TIMEOUT);
+    }
+
+    /**
+     * Описания отсутствующих на шарде индексов. Индекс, который есть, но не достроен, отмечается отдельно:
+     * его нужно пересоздать, а не просто выполнить миграции.
+     */
+    static List<String> problems(int shard, Set<RequiredIndex> valid, Set<RequiredIndex> invalid) {
+        return missing(valid).stream()
+                .map(index -> "shard " + shard + ": " + (index.isSatisfiedBy(invalid) ? "invalid " : "missing ")
+                        + index)
+                .collect(Collectors.toList());
+    }
+
+    static List<RequiredIndex> missing(Set<RequiredIndex> existing) {
+        return REQUIRED_INDEXES.stream()
+                .filter(required -> !required.isSatisfiedBy(existing))
+                .collect(Collectors.toList());
+    }
+
+    @Value
+    static class RequiredIndex {
+        String table;
+        String key;
+        String method;
+        boolean unique;
+
+        /**
+         * Неуникальному индексу подходит и уникальный того же типа по той же колонке
+         */
+        boolean isSatisfiedBy(Set<RequiredIndex> existing) {
+            return existing.contains(this) || !unique && existing.contains(new RequiredIndex(table, key, method, true));
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import org.reactivestreams.Publisher;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Репозиторий пользователей поверх нескольких шардов. Каждый запрос выполняется обычным репозиторием,
+ * а шард выбирается отметкой в контексте (см. {@link DataSourceRoutes#shard}).
+ * <ul>
+ * <li>Пользователь хранится на шарде id % shards. Идентификатор выдает БД шарда: значение по умолчанию для id
+ * на каждом шарде дает только его идентификаторы (миграция R__shard_user_ids.sql).</li>
+ * <li>Новые пользователи записываются на шарды по очереди, пачка insertAll - целиком на один шард,
+ * поэтому остается атомарной.</li>
+ * <li>Запросы по идентификаторам идут только на нужные шарды.</li>
+ * <li>Постраничные запросы и поиск выполняются на всех шардах параллельно. Каждый шард отдает не больше limit
+ * строк, упорядоченных по id, и они сливаются потоком в общий порядок без сбора всех результатов в память.</li>
+ * </ul>
+ */
+public class ShardedUsersRepository implements UsersRepository {
+
+    private static final Comparator<User> BY_ID = Comparator.comparing(User::getId);
+
+    private final UsersRepository delegate;
+    private final int shards;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ShardedUsersRepository(UsersRepository delegate, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.delegate = delegate;
+        this.shards = shards;
+    }
+
+    /**
+     * Совпадает со значением id по умолчанию на шарде: nextval * shards + номер шарда
+     */
+    public static int shardOf(int id, int shards) {
+        return Math.floorMod(id, shards);
+    }
+
+    @Override
+    public Mono<User> findById(int id) {
+        return onShard(shardOf(id), delegate.findById(id));
+    }
+
+    @Override
+    public Mono<User> findById(Integer id) {
+        return onShard(shardOf(id), delegate.findById(id));
+    }
+
+    @Override
+    public Mono<User> findById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Integer id) {
+        return onShard(shardOf(id), delegate.existsById(id));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<User> findByIds(Integer[] ids) {
+        return mergeById(byShard(Arrays.asList(ids), Function.identity()).entrySet().stream()
+                .map(shard -> onShard(shard.getKey(), delegate.findByIds(shard.getValue().toArray(Integer[]::new))))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Flux<User> findAllById(Iterable<Integer> ids) {
+        return Flux.merge(byShard(ids, Function.identity()).entrySet().stream()
+                .map(shard -> onShard(shard.getKey(), delegate.findAllById(shard.getValue())))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public Flux<User> findAllById(Publisher<Integer> ids) {
+        return Flux.from(ids).collectList().flatMapMany(this::findAllById);
+    }
+
+    /**
+     * Порядок findAll и streamAll не определен и для одной БД, поэтому строки шардов отдаются по мере поступления
+     */
+    @Override
+    public Flux<User> findAll() {
+        return Flux.merge(onEachShard(shard -> onShard(shard, delegate.findAll())));
+    }
+
+    @Override
+    public Flux<User> streamAll(int fetchSize) {
+        return Flux.merge(onEachShard(shard -> onShard(shard, delegate.streamAll(fetchSize))));
+    }
+
+    @Override
+    public Flux<User> findPage(int after, int limit) {
+        return mergeById(onEachShard(shard -> onShard(shard, delegate.findPage(after, limit))))
+                .take(limit);
+    }
+
+    @Override
+    public Flux<User> findByNamePrefix(String from, String to, int after, int limit) {
+        return mergeById(onEachShard(shard -> onShard(shard, delegate.findByNamePrefix(from, to, after, limit))))
+                .take(limit);
+    }
+
+    @Override
+    public Flux<User> findByNameContaining(String pattern, int after, int limit) {
+        return mergeById(onEachShard(shard -> onShard(shard, delegate.findByNameContaining(pattern, after, limit))))
+                .take(limit);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Flux.merge(onEachShard(shard -> onShard(shard, delegate.count())))
+                .reduce(0L, Long::sum);
+    }
+
+    @Override
+    public <S extends User> Mono<S> save(S user) {
+        int shard = user.getId() == null ? nextShard() : shardOf(user.getId());
+        return onShard(shard, delegate.save(user));
+    }
+
+    @Override
+    public <S extends User> Flux<S> saveAll(Iterable<S> users) {
+        return Flux.fromIterable(users).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends User> Flux<S> saveAll(Publisher<S> users) {
+        return Flux.from(users).concatMap(this::save);
+    }
+
+    @Override
+    public Flux<User> insertAll(List<User> users, int chunkSize) {
+        return onShard(nextShard(), delegate.insertAll(users, chunkSize));
+    }
+
+    @Override
+    public Mono<Integer> updateName(int id, String name) {
+        return onShard(shardOf(id), delegate.updateName(id, name));
+    }
+
+    @Override
+    public Mono<Integer> deleteUser(int id) {
+        return onShard(shardOf(id), delegate.deleteUser(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Integer id) {
+        return onShard(shardOf(id), delegate.deleteById(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(User user) {
+        return onShard(shardOf(user.getId()), delegate.delete(user));
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Integer> ids) {
+        return Flux.merge(byShard(ids, Function.<Integer>identity()).entrySet().stream()
+                        .map(shard -> onShard(shard.getKey(), delegate.deleteAllById(shard.getValue())))
+                        .collect(Collectors.toList()))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends User> users) {
+        return Flux.merge(byShard(users, User::getId).entrySet().stream()
+                        .map(shard -> onShard(shard.getKey(), delegate.deleteAll(shard.getValue())))
+                        .collect(Collectors.toList()))
+                .then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends User> users) {
+        return Flux.from(users).collectList().flatMap(this::deleteAll);
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Flux.merge(onEachShard(shard -> onShard(shard, delegate.deleteAll())))
+                .then();
+    }
+
+    private int shardOf(Integer id) {
+        Assert.notNull(id, "The given id must not be null!");
+        return shardOf(id, shards);
+    }
+
+    private int nextShard() {
+        return Math.floorMod(next.getAndIncrement(), shards);
+    }
+
+    private <T> Map<Integer, List<T>> byShard(Iterable<? extends T> values, Function<T, Integer> id) {
+        return StreamSupport.stream(values.spliterator(), false)
+                .collect(Collectors.groupingBy(value -> shardOf(id.apply(value))));
+    }
+
+    private <T> List<T> onEachShard(Function<Integer, T> query) {
+        return IntStream.range(0, shards)
+                .boxed()
+                .map(query)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Каждый источник уже упорядочен по id, поэтому слияние только выбирает наименьший из первых элементов
+     */
+    @SuppressWarnings("unchecked")
+    private static Flux<User> mergeById(List<Flux<User>> sources) {
+        if (sources.size() == 1) {
+            return sources.get(0);
+        }
+        return Flux.mergeComparing(BY_ID, sources.toArray(Flux[]::new));
+    }
+
+    private static <T> Mono<T> onShard(int shard, Mono<T> query) {
+        return query.contextWrite(DataSourceRoutes.shard(shard));
+    }
+
+    private static <T> Flux<T> onShard(int shard, Flux<T> query) {
+        return query.contextWrite(DataSourceRoutes.shard(shard));
+    }
+}
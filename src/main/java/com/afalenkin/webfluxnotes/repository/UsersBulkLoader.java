@@ -0,0 +1,20 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Массовая загрузка новых пользователей одной операцией: либо записаны все, либо ни одного.
+ */
+public interface UsersBulkLoader {
+
+    /**
+     * @param flushRows сколько строк накапливается перед отправкой очередной порции данных
+     * @return количество записанных строк
+     */
+    Mono<Long> copy(Flux<User> users, int flushRows);
+}
@@ -1,7 +1,10 @@
 package com.afalenkin.webfluxnotes.repository;
 
 import com.afalenkin.webfluxnotes.domain.User;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
@@ -10,7 +13,35 @@ import reactor.core.publisher.Mono;
  *
  * Spring data jpa не позволяет работать в реактивном стиле
  */
-public interface UsersRepository extends ReactiveCrudRepository<User, Integer> {
+public interface UsersRepository extends ReactiveCrudRepository<User, Integer>, UsersRepositoryCustom {
 
+    @Query(PreparedStatements.FIND_USER_BY_ID)
     Mono<User> findById(int id);
+
+    /**
+     * Keyset-пагинация: вместо OFFSET, который заставляет БД прочитать и отбросить все предыдущие строки,
+     * страница начинается сразу после переданного идентификатора.
+     * Такой запрос идет по индексу первичного ключа, поэтому его стоимость не зависит от размера таблицы.
+     */
+    @Query("SELECT * FROM users WHERE id > :after ORDER BY id LIMIT :limit")
+    Flux<User> findPage(int after, int limit);
+
+    /**
+     * Несколько пользователей одним запросом. Идентификаторы передаются одним параметром-массивом,
+     * поэтому текст запроса не зависит от их количества и план запроса переиспользуется.
+     */
+    @Query("SELECT * FROM users WHERE id = ANY(:ids) ORDER BY id")
+    Flux<User> findByIds(Integer[] ids);
+
+    /**
+     * Изменение и удаление выполняются одним запросом без предварительного чтения.
+     * Возвращают количество затронутых строк: 0 означает, что пользователя нет.
+     */
+    @Modifying
+    @Query("UPDATE users SET name = :name WHERE id = :id")
+    Mono<Integer> updateName(int id, String name);
+
+    @Modifying
+    @Query("DELETE FROM users WHERE id = :id")
+    Mono<Integer> deleteUser(int id);
 }
@@ -0,0 +1,41 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Запросы, которые нельзя выразить через методы ReactiveCrudRepository и @Query.
+ * Spring Data найдет реализацию по имени интерфейса с суффиксом Impl и подмешает ее в UsersRepository.
+ */
+public interface UsersRepositoryCustom {
+
+    /**
+     * Потоковое чтение всех пользователей: строки читаются из курсора БД порциями по fetchSize
+     */
+    Flux<User> streamAll(int fetchSize);
+
+    /**
+     * Вставка новых пользователей многострочными INSERT ... VALUES (...), (...) RETURNING *:
+     * один запрос на каждые chunkSize пользователей вместо запроса на каждого.
+     * Если запросов несколько, они выполняются в одной транзакции: записываются либо все пользователи, либо ни один.
+     * Возвращает сохраненных пользователей с идентификаторами в порядке вставки.
+     */
+    Flux<User> insertAll(List<User> users, int chunkSize);
+
+    /**
+     * Поиск по началу имени без учета регистра. Условие записано диапазоном [from, to) в побайтовом сравнении,
+     * а не через LIKE: LIKE с параметром использует индекс только в плане, построенном под конкретное значение,
+     * а диапазон - и в общем плане подготовленного запроса.
+     */
+    Flux<User> findByNamePrefix(String from, String to, int after, int limit);
+
+    /**
+     * Поиск по подстроке имени без учета регистра через триграммный индекс
+     */
+    Flux<User> findByNameContaining(String pattern, int after, int limit);
+}
@@ -0,0 +1,110 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Транзакции открываются здесь, а не в сервисе: соединение для транзакции выбирается по отметкам в контексте
+ * (реплика, шард), а выбрать шард может только репозиторий.
+ */
+@RequiredArgsConstructor
+public class UsersRepositoryCustomImpl implements UsersRepositoryCustom {
+
+    /**
+     * Наибольшее количество параметров в одном запросе. Протокол PostgreSQL допускает 65535
+     * (двухбайтовое число без знака), но часть драйверов считает это число знаковым, поэтому ограничение
+     * намеренно вдвое меньше.
+     */
+    static final int MAX_BIND_PARAMETERS = 32_767;
+
+    private static final String FIND_BY_NAME_PREFIX = "SELECT * FROM users "
+            + "WHERE lower(name) ~>=~ :from AND lower(name) ~<~ :to AND id > :after ORDER BY id LIMIT :limit";
+
+    private static final String FIND_BY_NAME_CONTAINING = "SELECT * FROM users "
+            + "WHERE name ILIKE :pattern AND id > :after ORDER BY id LIMIT :limit";
+
+    private final DatabaseClient databaseClient;
+    private final R2dbcConverter converter;
+    private final TransactionalOperator transactionalOperator;
+
+    @Override
+    public Flux<User> streamAll(int fetchSize) {
+        return databaseClient.sql("SELECT * FROM users")
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .map((row, metadata) -> converter.read(User.class, row, metadata))
+                .all();
+    }
+
+    /**
+     * Одна пачка - один запрос, и транзакция для него не нужна
+     */
+    @Override
+    public Flux<User> insertAll(List<User> users, int chunkSize) {
+        int size = Math.min(chunkSize, MAX_BIND_PARAMETERS);
+        if (users.size() <= size) {
+            return users.isEmpty() ? Flux.empty() : insertChunk(users);
+        }
+        return transactionalOperator.transactional(Flux.fromIterable(users)
+                .buffer(size)
+                .concatMap(this::insertChunk));
+    }
+
+    @Override
+    public Flux<User> findByNamePrefix(String from, String to, int after, int limit) {
+        return withCustomPlans(databaseClient.sql(FIND_BY_NAME_PREFIX)
+                .bind("from", from)
+                .bind("to", to)
+                .bind("after", after)
+                .bind("limit", limit)
+                .map((row, metadata) -> converter.read(User.class, row, metadata))
+                .all());
+    }
+
+    @Override
+    public Flux<User> findByNameContaining(String pattern, int after, int limit) {
+        return withCustomPlans(databaseClient.sql(FIND_BY_NAME_CONTAINING)
+                .bind("pattern", pattern)
+                .bind("after", after)
+                .bind("limit", limit)
+                .map((row, metadata) -> converter.read(User.class, row, metadata))
+                .all());
+    }
+
+    /**
+     * Запрос выполняется в транзакции, в которой планы строятся под переданные значения параметров.
+     * Драйвер кэширует подготовленные запросы, а для них PostgreSQL после нескольких выполнений переходит
+     * на общий план. Для поиска по имени общий план не знает, насколько редкое значение ищется, и выбирает
+     * чтение по первичному ключу с фильтром - для редких значений это чтение почти всей таблицы.
+     * SET LOCAL действует только до конца транзакции.
+     */
+    private Flux<User> withCustomPlans(Flux<User> query) {
+        Mono<Void> useCustomPlans = databaseClient.sql("SET LOCAL plan_cache_mode = force_custom_plan")
+                .then();
+        return transactionalOperator.transactional(useCustomPlans.thenMany(query));
+    }
+
+    private Flux<User> insertChunk(List<User> chunk) {
+        StringBuilder sql = new StringBuilder("INSERT INTO users (name) VALUES ");
+        for (int i = 1; i <= chunk.size(); i++) {
+            sql.append(i == 1 ? "($" : ", ($").append(i).append(')');
+        }
+        sql.append(" RETURNING *");
+
+        DatabaseClient.GenericExecuteSpec insert = databaseClient.sql(sql.toString());
+        for (int i = 0; i < chunk.size(); i++) {
+            insert = insert.bind(i, chunk.get(i).getName());
+        }
+        return insert.map((row, metadata) -> converter.read(User.class, row, metadata))
+                .all();
+    }
+}
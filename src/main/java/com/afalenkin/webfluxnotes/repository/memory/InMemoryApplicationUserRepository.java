@@ -0,0 +1,43 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import com.afalenkin.webfluxnotes.domain.ApplicationUser;
+import com.afalenkin.webfluxnotes.repository.ApplicationUserRepository;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Пользователи приложения в памяти процесса. Их единицы, а найденный пользователь кэшируется
+ * ApplicationUserDetailsService, поэтому поиск по логину - проход по всем пользователям без отдельного индекса.
+ */
+public class InMemoryApplicationUserRepository extends InMemoryCrudRepository<ApplicationUser>
+        implements ApplicationUserRepository {
+
+    public InMemoryApplicationUserRepository(List<ApplicationUser> users) {
+        super("application_users");
+        insertAll(users);
+    }
+
+    @Override
+    protected Integer idOf(ApplicationUser user) {
+        return user.getId();
+    }
+
+    /**
+     * У ApplicationUser нет копирования с другим id, поэтому, как и Spring Data для таких сущностей,
+     * идентификатор записывается в сохраняемый объект
+     */
+    @Override
+    protected ApplicationUser withId(ApplicationUser user, int id) {
+        user.setId(id);
+        return user;
+    }
+
+    @Override
+    public Mono<ApplicationUser> findByUsername(String username) {
+        return scan(0, 1, user -> user.getUsername().equals(username)).next();
+    }
+}
@@ -0,0 +1,179 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import org.reactivestreams.Publisher;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Общая часть репозиториев в памяти: методы ReactiveCrudRepository поверх {@link IntObjectStore}.
+ * Идентификаторы новых записей выдает счетчик без блокировок, как последовательность в БД:
+ * пачке записей сразу выделяется непрерывный диапазон.
+ * <p>
+ * Как и запросы к БД, операции выполняются при подписке. Сохраненные объекты хранятся и отдаются
+ * без копирования, поэтому изменять полученные из репозитория объекты нельзя: изменение записывается
+ * только через методы репозитория, которые заменяют объект целиком.
+ */
+abstract class InMemoryCrudRepository<T> implements ReactiveCrudRepository<T, Integer> {
+
+    protected final IntObjectStore<T> store = new IntObjectStore<>();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final String table;
+
+    protected InMemoryCrudRepository(String table) {
+        this.table = table;
+    }
+
+    protected abstract Integer idOf(T entity);
+
+    protected abstract T withId(T entity, int id);
+
+    /**
+     * Выделяет count идентификаторов подряд
+     *
+     * @return первый из выделенных идентификаторов
+     */
+    protected int allocateIds(int count) {
+        return sequence.getAndAdd(count) + 1;
+    }
+
+    protected T insert(T entity, int id) {
+        T saved = withId(entity, id);
+        store.put(id, saved);
+        return saved;
+    }
+
+    protected Flux<T> scan(int after, int limit, Predicate<T> filter) {
+        return Flux.defer(() -> Flux.fromIterable(store.scan(after, limit, filter)));
+    }
+
+    /**
+     * Как и Spring Data, сохранение объекта с идентификатором - это изменение существующей записи
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends T> Mono<S> save(S entity) {
+        return Mono.fromSupplier(() -> {
+            Integer id = idOf(entity);
+            if (id == null) {
+                return (S) insert(entity, allocateIds(1));
+            }
+            if (store.computeIfPresent(id, current -> entity) == null) {
+                throw new TransientDataAccessResourceException(String.format(
+                        "Failed to update table [%s]; Row with Id [%s] does not exist", table, id));
+            }
+            return entity;
+        });
+    }
+
+    @Override
+    public <S extends T> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends T> Flux<S> saveAll(Publisher<S> entities) {
+        return Flux.from(entities).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<T> findById(Integer id) {
+        return Mono.fromSupplier(() -> store.get(id));
+    }
+
+    @Override
+    public Mono<T> findById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Integer id) {
+        return Mono.fromSupplier(() -> store.get(id) != null);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    /**
+     * Все записи в состоянии на момент подписки (см. {@link IntObjectStore#snapshot()}).
+     * Изменения во время отдачи записей не видны, даже если подписчик забирает их медленно.
+     */
+    @Override
+    public Flux<T> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(store.snapshot()));
+    }
+
+    @Override
+    public Flux<T> findAllById(Iterable<Integer> ids) {
+        return Flux.fromIterable(ids).concatMap(this::findById);
+    }
+
+    @Override
+    public Flux<T> findAllById(Publisher<Integer> ids) {
+        return Flux.from(ids).concatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> (long) store.size());
+    }
+
+    @Override
+    public Mono<Void> deleteById(Integer id) {
+        return Mono.fromRunnable(() -> store.remove(id));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Integer> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(T entity) {
+        return deleteById(idOf(entity));
+    }
+
+    @Override
+    public Mono<Void> deleteAllById(Iterable<? extends Integer> ids) {
+        return Mono.fromRunnable(() -> ids.forEach(store::remove));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends T> entities) {
+        return Mono.fromRunnable(() -> entities.forEach(entity -> store.remove(idOf(entity))));
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends T> entities) {
+        return Flux.from(entities).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(store::clear);
+    }
+
+    /**
+     * Вставка новых записей с идентификаторами из одного диапазона в порядке переданного списка
+     */
+    protected List<T> insertAll(List<T> entities) {
+        int id = allocateIds(entities.size());
+        List<T> saved = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            saved.add(insert(entity, id++));
+        }
+        return saved;
+    }
+}
@@ -0,0 +1,26 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.repository.UsersBulkLoader;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Массовая загрузка в памяти: пользователи собираются целиком и записываются только после конца потока,
+ * поэтому ошибка или отмена посреди загрузки, как и в COPY, не оставляет записанных строк.
+ */
+@RequiredArgsConstructor
+public class InMemoryUsersBulkLoader implements UsersBulkLoader {
+
+    private final InMemoryUsersRepository repository;
+
+    @Override
+    public Mono<Long> copy(Flux<User> users, int flushRows) {
+        return users.collectList()
+                .flatMap(collected -> repository.insertAll(collected, flushRows).count());
+    }
+}
@@ -0,0 +1,133 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Пользователи в памяти процесса. Повторяет видимое поведение запросов UsersRepository:
+ * порядок по id, пропуск отсутствующих, количество измененных строк, поиск по имени без учета регистра.
+ * Поиск по имени - это проход по всем пользователям после after, индексов по имени нет.
+ */
+public class InMemoryUsersRepository extends InMemoryCrudRepository<User> implements UsersRepository {
+
+    public InMemoryUsersRepository() {
+        this(0);
+    }
+
+    /**
+     * @param size сколько пользователей создать сразу (с именами user1, user2, ...)
+     */
+    public InMemoryUsersRepository(int size) {
+        super("users");
+        insertAll(IntStream.rangeClosed(1, size)
+                .mapToObj(i -> new User(null, "user" + i))
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    protected Integer idOf(User user) {
+        return user.getId();
+    }
+
+    @Override
+    protected User withId(User user, int id) {
+        return user.withId(id);
+    }
+
+    @Override
+    public Mono<User> findById(int id) {
+        return Mono.fromSupplier(() -> store.get(id));
+    }
+
+    @Override
+    public Flux<User> findPage(int after, int limit) {
+        return scan(after, limit, user -> true);
+    }
+
+    @Override
+    public Flux<User> findByIds(Integer[] ids) {
+        return Flux.defer(() -> Flux.fromStream(Arrays.stream(ids)
+                .filter(Objects::nonNull)
+                .sorted()
+                .distinct()
+                .map(store::get)
+                .filter(Objects::nonNull)));
+    }
+
+    @Override
+    public Mono<Integer> updateName(int id, String name) {
+        return Mono.fromSupplier(() -> store.computeIfPresent(id, user -> user.withName(name)) == null ? 0 : 1);
+    }
+
+    @Override
+    public Mono<Integer> deleteUser(int id) {
+        return Mono.fromSupplier(() -> store.remove(id) == null ? 0 : 1);
+    }
+
+    @Override
+    public Flux<User> streamAll(int fetchSize) {
+        return findAll();
+    }
+
+    /**
+     * Вставка в памяти не может упасть на середине, поэтому chunkSize не нужен: все пользователи
+     * получают идентификаторы из одного диапазона и записываются сразу
+     */
+    @Override
+    public Flux<User> insertAll(List<User> users, int chunkSize) {
+        return Flux.defer(() -> Flux.fromIterable(insertAll(users)));
+    }
+
+    /**
+     * Границы диапазона сравниваются по кодовым точкам, как побайтовое сравнение UTF-8 в БД
+     */
+    @Override
+    public Flux<User> findByNamePrefix(String from, String to, int after, int limit) {
+        return scan(after, limit, user -> {
+            String name = lowerName(user);
+            return compareCodePoints(name, from) >= 0 && compareCodePoints(name, to) < 0;
+        });
+    }
+
+    /**
+     * Шаблон вида %подстрока% с экранированными символами LIKE
+     */
+    @Override
+    public Flux<User> findByNameContaining(String pattern, int after, int limit) {
+        String substring = pattern.substring(1, pattern.length() - 1)
+                .replaceAll("\\\\(.)", "$1")
+                .toLowerCase(Locale.ROOT);
+        return scan(after, limit, user -> lowerName(user).contains(substring));
+    }
+
+    private static String lowerName(User user) {
+        return user.getName() == null ? "" : user.getName().toLowerCase(Locale.ROOT);
+    }
+
+    static int compareCodePoints(String left, String right) {
+        int i = 0;
+        int j = 0;
+        while (i < left.length() && j < right.length()) {
+            int a = left.codePointAt(i);
+            int b = right.codePointAt(j);
+            if (a != b) {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return Integer.compare(left.length() - i, right.length() - j);
+    }
+}
@@ -0,0 +1,271 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Хранилище объектов по неотрицательному ключу int без блокировок и без упаковки ключей в Integer.
+ * Ключи выдаются подряд, поэтому значения лежат в массиве, разбитом на сегменты: значение по ключу -
+ * это два обращения к массиву, а обход по возрастанию ключей - просто проход по сегментам.
+ * Сегмент создается при первой записи в его диапазон, оглавление сегментов при этом копируется
+ * (раз на {@link #SEGMENT_SIZE} ключей).
+ * <p>
+ * Каждое значение меняется атомарно (compareAndSet), чтения не ждут записей. Обход без снимка видит
+ * каждое значение в одном из его состояний, как чтение без транзакции. Согласованный снимок всего
+ * хранилища дает {@link #snapshot()}.
+ */
+class IntObjectStore<T> {
+
+    static final int SEGMENT_BITS = 10;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final int MAX_SEGMENTS = (Integer.MAX_VALUE >>> SEGMENT_BITS) + 1;
+
+    /**
+     * Сколько раз снимок пытается скопировать значения без остановки записи
+     */
+    private static final int OPTIMISTIC_ATTEMPTS = 3;
+
+    private final AtomicReference<AtomicReferenceArray<T>[]> segments;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Начатые и завершенные записи: если за время копирования ни одна запись не началась
+     * и ни одна не выполнялась в начале - копия совпадает с состоянием хранилища на момент начала копирования.
+     */
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+
+    /**
+     * Сколько снимков сейчас остановили запись
+     */
+    private final AtomicInteger snapshotsInProgress = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    IntObjectStore() {
+        this.segments = new AtomicReference<>(new AtomicReferenceArray[0]);
+    }
+
+    T get(int key) {
+        AtomicReferenceArray<T> segment = segment(key);
+        return segment == null ? null : segment.get(key & SEGMENT_MASK);
+    }
+
+    /**
+     * @return предыдущее значение
+     */
+    T put(int key, T value) {
+        AtomicReferenceArray<T> segment = createSegment(key);
+        beginWrite();
+        try {
+            T previous = segment.getAndSet(key & SEGMENT_MASK, value);
+            if (previous == null) {
+                size.incrementAndGet();
+            }
+            return previous;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Заменяет существующее значение на результат функции. Если значение успели изменить,
+     * функция вызывается снова для нового значения.
+     *
+     * @return новое значение или null, если значения по ключу нет
+     */
+    T computeIfPresent(int key, UnaryOperator<T> update) {
+        AtomicReferenceArray<T> segment = segment(key);
+        if (segment == null) {
+            return null;
+        }
+        int index = key & SEGMENT_MASK;
+        beginWrite();
+        try {
+            while (true) {
+                T current = segment.get(index);
+                if (current == null) {
+                    return null;
+                }
+                T updated = update.apply(current);
+                if (segment.compareAndSet(index, current, updated)) {
+                    return updated;
+                }
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * @return удаленное значение
+     */
+    T remove(int key) {
+        AtomicReferenceArray<T> segment = segment(key);
+        if (segment == null) {
+            return null;
+        }
+        beginWrite();
+        try {
+            T previous = segment.getAndSet(key & SEGMENT_MASK, null);
+            if (previous != null) {
+                size.decrementAndGet();
+            }
+            return previous;
+        } finally {
+            endWrite();
+        }
+    }
+
+    void clear() {
+        AtomicReferenceArray<T>[] current = segments.get();
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != null) {
+                for (int j = 0; j < SEGMENT_SIZE; j++) {
+                    remove((i << SEGMENT_BITS) | j);
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Первые limit значений с ключом больше after, подходящие под условие, по возрастанию ключа
+     */
+    List<T> scan(int after, int limit, Predicate<T> filter) {
+        List<T> found = new ArrayList<>(Math.min(limit, SEGMENT_SIZE));
+        int from = after < 0 ? 0 : after + 1;
+        if (from < 0 || limit <= 0) {
+            return found;
+        }
+        AtomicReferenceArray<T>[] current = segments.get();
+        for (int i = from >>> SEGMENT_BITS; i < current.length; i++) {
+            AtomicReferenceArray<T> segment = current[i];
+            if (segment == null) {
+                continue;
+            }
+            int start = i == from >>> SEGMENT_BITS ? from & SEGMENT_MASK : 0;
+            for (int j = start; j < SEGMENT_SIZE; j++) {
+                T value = segment.get(j);
+                if (value != null && filter.test(value)) {
+                    found.add(value);
+                    if (found.size() == limit) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Все значения по возрастанию ключа в состоянии хранилища на один момент времени:
+     * записи, начатые во время копирования, в снимок не попадают.
+     * <p>
+     * Сначала значения копируются без остановки записи. Если при этом каждый раз шла запись -
+     * новые записи ждут, пока снимок скопирует значения. Ожидание - это короткое активное ожидание
+     * без блокировки потока, равное времени копирования.
+     */
+    List<T> snapshot() {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long finished = writesFinished.get();
+            if (writesStarted.get() != finished) {
+                Thread.onSpinWait();
+                continue;
+            }
+            List<T> copy = copy();
+            if (writesStarted.get() == finished) {
+                return copy;
+            }
+        }
+
+        snapshotsInProgress.incrementAndGet();
+        try {
+            while (writesStarted.get() != writesFinished.get()) {
+                Thread.onSpinWait();
+            }
+            return copy();
+        } finally {
+            snapshotsInProgress.decrementAndGet();
+        }
+    }
+
+    private List<T> copy() {
+        List<T> copy = new ArrayList<>(size.get());
+        for (AtomicReferenceArray<T> segment : segments.get()) {
+            if (segment == null) {
+                continue;
+            }
+            for (int j = 0; j < SEGMENT_SIZE; j++) {
+                T value = segment.get(j);
+                if (value != null) {
+                    copy.add(value);
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Запись, начатая во время снимка, откатывает отметку о начале и ждет его окончания
+     */
+    private void beginWrite() {
+        while (true) {
+            while (snapshotsInProgress.get() > 0) {
+                Thread.onSpinWait();
+            }
+            writesStarted.incrementAndGet();
+            if (snapshotsInProgress.get() == 0) {
+                return;
+            }
+            writesFinished.incrementAndGet();
+        }
+    }
+
+    private void endWrite() {
+        writesFinished.incrementAndGet();
+    }
+
+    private AtomicReferenceArray<T> segment(int key) {
+        if (key < 0) {
+            return null;
+        }
+        AtomicReferenceArray<T>[] current = segments.get();
+        int index = key >>> SEGMENT_BITS;
+        return index < current.length ? current[index] : null;
+    }
+
+    private AtomicReferenceArray<T> createSegment(int key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key should not be negative: " + key);
+        }
+        int index = key >>> SEGMENT_BITS;
+        while (true) {
+            AtomicReferenceArray<T>[] current = segments.get();
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            AtomicReferenceArray<T>[] grown = index < current.length
+                    ? current.clone()
+                    : Arrays.copyOf(current, Math.min(Math.max(index + 1, current.length * 2), MAX_SEGMENTS));
+            grown[index] = new AtomicReferenceArray<>(SEGMENT_SIZE);
+            if (segments.compareAndSet(current, grown)) {
+                return grown[index];
+            }
+        }
+    }
+}
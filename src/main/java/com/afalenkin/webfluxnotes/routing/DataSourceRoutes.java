@@ -0,0 +1,72 @@
+package com.afalenkin.webfluxnotes.routing;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.Value;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Отметки в контексте Reactor, по которым {@link ReplicaRoutingConnectionFactory} и
+ * {@link ShardRoutingConnectionFactory} выбирают БД.
+ * Без отметки запрос идет в основную БД, поэтому пропущенная отметка стоит лишь нагрузки,
+ * а запись случайно не уйдет в реплику.
+ * <p>
+ * Отметка должна быть выше по цепочке, чем получение соединения: для транзакции - снаружи транзакции.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class DataSourceRoutes {
+
+    private static final String USER_KEY = "user:";
+
+    /**
+     * Запрос только читает данные и может выполняться на реплике. Если вызывающий или любой из keys
+     * недавно записывался (см. {@link ReadYourWrites}), запрос все равно пойдет в основную БД.
+     */
+    public static Function<Context, Context> readOnly(String... keys) {
+        return context -> context.put(ReadOnly.class, new ReadOnly(List.of(keys)));
+    }
+
+    /**
+     * Запрос выполняется на шарде с номером index. Шард 0 - основная БД, в ней же таблицы, которые не шардируются.
+     */
+    public static Function<Context, Context> shard(int index) {
+        return context -> context.put(Shard.class, new Shard(index));
+    }
+
+    /**
+     * Номер шарда, отмеченный в контексте, без отметки - 0
+     */
+    public static int currentShard(ContextView context) {
+        Shard shard = context.getOrDefault(Shard.class, null);
+        return shard == null ? 0 : shard.getIndex();
+    }
+
+    /**
+     * Ключ конкретного пользователя. Нужен для чтений, которые выполняются без контекста вызывающего,
+     * например загрузка в общий кэш: иначе сразу после изменения кэш мог бы заполниться старым значением с реплики.
+     */
+    public static String userKey(int id) {
+        return USER_KEY + id;
+    }
+
+    static boolean isUserKey(String key) {
+        return key.startsWith(USER_KEY);
+    }
+
+    @Value
+    static class ReadOnly {
+        List<String> keys;
+    }
+
+    @Value
+    static class Shard {
+        int index;
+    }
+}
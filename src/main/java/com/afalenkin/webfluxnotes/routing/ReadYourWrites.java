@@ -0,0 +1,114 @@
+package com.afalenkin.webfluxnotes.routing;
+
+import com.afalenkin.webfluxnotes.config.ReplicasProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Помнит, кто недавно записывал данные: аутентифицированного вызывающего и переданные ключи.
+ * Пока запись не старше окна readYourWrites, чтения с теми же ключами идут в основную БД,
+ * и вызывающий не видит на реплике состояние до своего изменения.
+ * Вызывающего помнит только экземпляр приложения, который выполнил запись. Об измененных пользователях
+ * остальные экземпляры узнают из PostgresCacheInvalidationBus и отмечают их ключи у себя.
+ */
+@Component
+public class ReadYourWrites {
+
+    private static final String CALLER_KEY = "caller:";
+    private static final long MAXIMUM_SIZE = 100_000;
+
+    private final Cache<String, Boolean> written;
+    private final long windowNanos;
+
+    /**
+     * До какого System.nanoTime() все пользователи считаются недавно записанными
+     */
+    private volatile long allUsersWrittenUntil = System.nanoTime();
+
+    public ReadYourWrites(ReplicasProperties properties) {
+        Duration window = properties.getReadYourWrites();
+        this.windowNanos = window.toNanos();
+        this.written = window.isZero() || window.isNegative()
+                ? null
+                : Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    /**
+     * Отмечает запись вызывающего и ключей
+     */
+    public Mono<Void> written(String... keys) {
+        if (written == null) {
+            return Mono.empty();
+        }
+        return caller()
+                .doOnNext(caller -> written.put(caller, Boolean.TRUE))
+                .then(Mono.fromRunnable(() -> {
+                    for (String key : keys) {
+                        written.put(key, Boolean.TRUE);
+                    }
+                }));
+    }
+
+    /**
+     * Отмечает пользователей, измененных другим экземпляром приложения: о записи он сообщает через
+     * CacheInvalidationBus. Без отметки загрузка в кэш после сброса могла бы прочитать с отстающей реплики
+     * старое значение и хранить его до конца TTL кэша.
+     */
+    public void usersWritten(Collection<Integer> ids) {
+        if (written == null) {
+            return;
+        }
+        for (Integer id : ids) {
+            written.put(DataSourceRoutes.userKey(id), Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Отмечает всех пользователей: экземпляр мог пропустить уведомления об изменениях, например пока
+     * восстанавливал соединение для CacheInvalidationBus, и не знает, кого изменили.
+     */
+    public void allUsersWritten() {
+        if (written == null) {
+            return;
+        }
+        allUsersWrittenUntil = System.nanoTime() + windowNanos;
+    }
+
+    /**
+     * Была ли недавно запись вызывающего или любого из ключей
+     */
+    public Mono<Boolean> recentlyWritten(Collection<String> keys) {
+        if (written == null) {
+            return Mono.just(false);
+        }
+        boolean allUsers = System.nanoTime() - allUsersWrittenUntil < 0;
+        if (keys.stream().anyMatch(key -> written.getIfPresent(key) != null
+                || allUsers && DataSourceRoutes.isUserKey(key))) {
+            return Mono.just(true);
+        }
+        return caller()
+                .map(caller -> written.getIfPresent(caller) != null)
+                .defaultIfEmpty(false);
+    }
+
+    private static Mono<String> caller() {
+        return ReactiveSecurityContextHolder.getContext()
+                .mapNotNull(SecurityContext::getAuthentication)
+                .map(Authentication::getName)
+                .map(CALLER_KEY::concat);
+    }
+}
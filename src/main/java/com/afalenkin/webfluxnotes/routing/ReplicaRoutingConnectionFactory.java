@@ -0,0 +1,139 @@
+package com.afalenkin.webfluxnotes.routing;
+
+import com.afalenkin.webfluxnotes.config.ReplicasProperties;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Отправляет запросы, отмеченные {@link DataSourceRoutes#readOnly}, в пулы реплик, остальные - в основную БД.
+ * Реплика выбирается по очереди или по наименьшему количеству ожидающих соединения запросов.
+ * Соединение выбирается в момент его получения, поэтому вся транзакция выполняется в одной БД.
+ * <p>
+ * Для метрик пулов и LISTEN фабрика разворачивается до основной БД.
+ */
+public class ReplicaRoutingConnectionFactory extends AbstractRoutingConnectionFactory
+        implements Wrapped<ConnectionFactory>, Disposable {
+
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica-";
+
+    private final ConnectionFactory primary;
+    private final List<? extends ConnectionFactory> replicas;
+    private final ReplicasProperties.Balancing balancing;
+    private final ReadYourWrites readYourWrites;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingConnectionFactory(ConnectionFactory primary,
+                                           List<? extends ConnectionFactory> replicas,
+                                           ReplicasProperties.Balancing balancing,
+                                           ReadYourWrites readYourWrites) {
+        if (replicas.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica is required");
+        }
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.balancing = balancing;
+        this.readYourWrites = readYourWrites;
+
+        Map<String, ConnectionFactory> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(replicaName(i), replicas.get(i));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    public static String replicaName(int index) {
+        return REPLICA + index;
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> {
+            DataSourceRoutes.ReadOnly readOnly = context.getOrDefault(DataSourceRoutes.ReadOnly.class, null);
+            if (readOnly == null) {
+                return Mono.just(PRIMARY);
+            }
+            return readYourWrites.recentlyWritten(readOnly.getKeys())
+                    .map(written -> written ? PRIMARY : replicaName(nextReplica()));
+        });
+    }
+
+    private int nextReplica() {
+        if (balancing == ReplicasProperties.Balancing.LEAST_PENDING) {
+            return leastPending();
+        }
+        return Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+
+    /**
+     * При равном количестве ожидающих реплики перебираются по очереди, иначе при малой нагрузке
+     * все запросы доставались бы первой реплике
+     */
+    private int leastPending() {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        int best = start;
+        int bestPending = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            int pending = pendingAcquires(replicas.get(index));
+            if (pending < bestPending) {
+                best = index;
+                bestPending = pending;
+            }
+        }
+        return best;
+    }
+
+    private static int pendingAcquires(ConnectionFactory connectionFactory) {
+        ConnectionFactory current = connectionFactory;
+        while (!(current instanceof ConnectionPool) && current instanceof Wrapped) {
+            Object unwrapped = ((Wrapped<?>) current).unwrap();
+            if (!(unwrapped instanceof ConnectionFactory)) {
+                return 0;
+            }
+            current = (ConnectionFactory) unwrapped;
+        }
+        return current instanceof ConnectionPool
+                ? ((ConnectionPool) current).getMetrics().map(PoolMetrics::pendingAcquireSize).orElse(0)
+                : 0;
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return primary;
+    }
+
+    @Override
+    public void dispose() {
+        dispose(primary);
+        replicas.forEach(ReplicaRoutingConnectionFactory::dispose);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return primary instanceof Disposable && ((Disposable) primary).isDisposed();
+    }
+
+    private static void dispose(ConnectionFactory connectionFactory) {
+        if (connectionFactory instanceof Disposable) {
+            ((Disposable) connectionFactory).dispose();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.afalenkin.webfluxnotes.routing;
+
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Отправляет запросы, отмеченные {@link DataSourceRoutes#shard}, в БД нужного шарда, остальные - в шард 0.
+ * Какой шард нужен запросу, решает репозиторий: фабрика только выполняет отметку.
+ * Как и для реплик, БД выбирается при получении соединения, поэтому транзакция не может охватывать несколько шардов.
+ * <p>
+ * Для метрик пулов и LISTEN фабрика разворачивается до шарда 0.
+ */
+public class ShardRoutingConnectionFactory extends AbstractRoutingConnectionFactory
+        implements Wrapped<ConnectionFactory>, Disposable {
+
+    static final String SHARD = "shard-";
+
+    private final List<? extends ConnectionFactory> shards;
+
+    public ShardRoutingConnectionFactory(List<? extends ConnectionFactory> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+
+        Map<String, ConnectionFactory> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(shardName(i), shards.get(i));
+        }
+        setTargetConnectionFactories(targets);
+        setDefaultTargetConnectionFactory(shards.get(0));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    public static String shardName(int index) {
+        return SHARD + index;
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.just(shardName(DataSourceRoutes.currentShard(context))));
+    }
+
+    @Override
+    public ConnectionFactory unwrap() {
+        return shards.get(0);
+    }
+
+    @Override
+    public void dispose() {
+        shards.forEach(shard -> {
+            if (shard instanceof Disposable) {
+                ((Disposable) shard).dispose();
+            }
+        });
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return shards.get(0) instanceof Disposable && ((Disposable) shards.get(0)).isDisposed();
+    }
+}
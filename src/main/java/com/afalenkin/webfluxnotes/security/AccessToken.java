@@ -0,0 +1,21 @@
+package com.afalenkin.webfluxnotes.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Ответ на запрос токена: сам токен, его тип для заголовка Authorization и время жизни в секундах
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccessToken {
+
+    private String accessToken;
+    private String tokenType;
+    private long expiresIn;
+}
@@ -0,0 +1,115 @@
+package com.afalenkin.webfluxnotes.security;
+
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.afalenkin.webfluxnotes.service.ApplicationUserChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collection;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * При HTTP Basic пароль приходит в каждом запросе и каждый раз заново проверяется медленным алгоритмом хэширования
+ * (bcrypt специально сделан медленным). Этот менеджер запоминает, что пароль пользователя уже был успешно проверен,
+ * и пока запись не устарела - повторные запросы с тем же паролем не идут ни в БД, ни в PasswordEncoder.
+ * <p>
+ * Сам пароль не хранится: в кэше лежит HMAC от пароля на случайном ключе, который живет только в памяти процесса.
+ * <p>
+ * Запись сбрасывается по {@link ApplicationUserChangedEvent}: после смены пароля или ролей старый пароль
+ * перестает приниматься, не дожидаясь credentials-ttl.
+ */
+public class CachingReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+
+    public static final String CACHE_NAME = "verified_credentials";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final ReactiveAuthenticationManager delegate;
+    private final Cache<String, VerifiedCredentials> verified;
+    private final ThreadLocal<Mac> macs;
+
+    public CachingReactiveAuthenticationManager(ReactiveAuthenticationManager delegate,
+                                                AuthProperties.Cache properties,
+                                                MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.verified = CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.getMaximumSize())
+                        .expireAfterWrite(properties.getCredentialsTtl())
+                        .recordStats()
+                        .<String, VerifiedCredentials>build(),
+                CACHE_NAME);
+
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        SecretKeySpec secretKey = new SecretKeySpec(key, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> createMac(secretKey));
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        if (!(authentication instanceof UsernamePasswordAuthenticationToken)
+                || !(authentication.getCredentials() instanceof String)) {
+            return delegate.authenticate(authentication);
+        }
+        String username = authentication.getName();
+        String password = (String) authentication.getCredentials();
+        byte[] digest = digest(password);
+
+        VerifiedCredentials credentials = verified.getIfPresent(username);
+        if (credentials != null && MessageDigest.isEqual(credentials.digest, digest)) {
+            return Mono.just(UsernamePasswordAuthenticationToken.authenticated(
+                    credentials.principal, password, credentials.authorities));
+        }
+        return delegate.authenticate(authentication)
+                .doOnNext(result -> verified.put(username,
+                        new VerifiedCredentials(digest, result.getPrincipal(), result.getAuthorities())));
+    }
+
+    @EventListener
+    public void onApplicationUserChanged(ApplicationUserChangedEvent event) {
+        if (event.isAll()) {
+            verified.invalidateAll();
+        } else {
+            verified.invalidate(event.getUsername());
+        }
+    }
+
+    private byte[] digest(String password) {
+        return macs.get().doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Mac createMac(SecretKeySpec secretKey) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class VerifiedCredentials {
+        private final byte[] digest;
+        private final Object principal;
+        private final Collection<? extends GrantedAuthority> authorities;
+    }
+}
@@ -0,0 +1,52 @@
+package com.afalenkin.webfluxnotes.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Измеряет время аутентификации (метрика auth.authentication) с тегами type - способ аутентификации
+ * и result - успешна ли она. Таймеры создаются заранее, запись не ищет их в реестре.
+ */
+public class TimedReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+
+    static final String METRIC = "auth.authentication";
+
+    private final ReactiveAuthenticationManager delegate;
+    private final Timer succeeded;
+    private final Timer failed;
+
+    public TimedReactiveAuthenticationManager(ReactiveAuthenticationManager delegate, String type,
+                                              MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.succeeded = timer(type, "success", meterRegistry);
+        this.failed = timer(type, "failure", meterRegistry);
+    }
+
+    private static Timer timer(String type, String result, MeterRegistry meterRegistry) {
+        return Timer.builder(METRIC)
+                .description("Time to authenticate a request")
+                .tag("type", type)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return delegate.authenticate(authentication)
+                    .doOnSuccess(result -> (result != null && result.isAuthenticated() ? succeeded : failed)
+                            .record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                    .doOnError(error -> failed.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
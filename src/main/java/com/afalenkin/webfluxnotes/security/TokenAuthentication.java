@@ -0,0 +1,48 @@
+package com.afalenkin.webfluxnotes.security;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Аутентификация по токену. До проверки содержит только сам токен,
+ * после проверки - имя пользователя и роли, взятые из токена.
+ */
+public class TokenAuthentication extends AbstractAuthenticationToken {
+
+    private final String token;
+    private final String username;
+
+    private TokenAuthentication(String token, String username, Collection<? extends GrantedAuthority> authorities) {
+        super(authorities);
+        this.token = token;
+        this.username = username;
+    }
+
+    public static TokenAuthentication unauthenticated(String token) {
+        return new TokenAuthentication(token, null, List.of());
+    }
+
+    public static TokenAuthentication authenticated(String token,
+                                                    String username,
+                                                    Collection<? extends GrantedAuthority> authorities) {
+        TokenAuthentication authentication = new TokenAuthentication(token, username, authorities);
+        authentication.setAuthenticated(true);
+        return authentication;
+    }
+
+    @Override
+    public String getCredentials() {
+        return token;
+    }
+
+    @Override
+    public String getPrincipal() {
+        return username;
+    }
+}
@@ -0,0 +1,29 @@
+package com.afalenkin.webfluxnotes.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authentication.ServerAuthenticationConverter;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Достает токен из заголовка "Authorization: Bearer ...".
+ * Если заголовка нет или в нем другая схема (например Basic) - вернет пустой Mono,
+ * и запрос будет аутентифицирован следующими фильтрами.
+ */
+public class TokenAuthenticationConverter implements ServerAuthenticationConverter {
+
+    private static final String PREFIX = TokenService.TOKEN_TYPE + " ";
+
+    @Override
+    public Mono<Authentication> convert(ServerWebExchange exchange) {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || !authorization.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+            return Mono.empty();
+        }
+        return Mono.just(TokenAuthentication.unauthenticated(authorization.substring(PREFIX.length()).trim()));
+    }
+}
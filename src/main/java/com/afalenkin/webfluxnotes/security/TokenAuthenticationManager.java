@@ -0,0 +1,32 @@
+package com.afalenkin.webfluxnotes.security;
+
+import com.afalenkin.webfluxnotes.domain.Authorities;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Проверяет токен в памяти: подпись, срок действия и роли берутся из самого токена.
+ * Наборы ролей переиспользуются так же, как у пользователей из БД.
+ */
+@RequiredArgsConstructor
+public class TokenAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private final TokenService tokenService;
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        String token = (String) authentication.getCredentials();
+        return Mono.justOrEmpty(tokenService.verify(token))
+                .switchIfEmpty(Mono.error(() -> new BadCredentialsException("Invalid token")))
+                .map(claims -> TokenAuthentication.authenticated(
+                        token,
+                        claims.getSub(),
+                        Authorities.parse(String.join(",", claims.getRoles()))));
+    }
+}
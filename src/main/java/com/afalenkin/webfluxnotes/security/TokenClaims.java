@@ -0,0 +1,24 @@
+package com.afalenkin.webfluxnotes.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Содержимое токена: имя пользователя, время истечения (секунды с начала эпохи) и его роли.
+ * Роли хранятся прямо в токене, поэтому для проверки запроса не нужно загружать пользователя из БД.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenClaims {
+
+    private String sub;
+    private long exp;
+    private List<String> roles;
+}
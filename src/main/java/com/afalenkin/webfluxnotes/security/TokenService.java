@@ -0,0 +1,131 @@
+package com.afalenkin.webfluxnotes.security;
+
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Выдача и проверка подписанных токенов в формате JWT (алгоритм HS256).
+ * Проверка токена - это вычисление HMAC и разбор небольшого JSON, она выполняется полностью в памяти,
+ * без обращения к БД и без медленного хэширования пароля.
+ */
+@Slf4j
+@Component
+public class TokenService {
+
+    public static final String TOKEN_TYPE = "Bearer";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_LENGTH = 32;
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * Заголовок у всех выдаваемых токенов одинаковый. Токены с любым другим заголовком (например alg=none)
+     * отклоняются без разбора.
+     */
+    private static final String HEADER = ENCODER.encodeToString(
+            "{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final ThreadLocal<Mac> macs;
+
+    public TokenService(AuthProperties properties, ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.ttl = properties.getToken().getTtl();
+        SecretKeySpec secretKey = new SecretKeySpec(secret(properties.getToken().getSecret()), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> createMac(secretKey));
+    }
+
+    public AccessToken issue(String username, Collection<? extends GrantedAuthority> authorities) {
+        TokenClaims claims = new TokenClaims(
+                username,
+                Instant.now().plus(ttl).getEpochSecond(),
+                authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList()));
+        String unsigned = HEADER + '.' + ENCODER.encodeToString(toJson(claims));
+        return new AccessToken(unsigned + '.' + ENCODER.encodeToString(sign(unsigned)), TOKEN_TYPE, ttl.toSeconds());
+    }
+
+    /**
+     * Вернет содержимое токена, если подпись верна и срок действия не истек
+     */
+    public Optional<TokenClaims> verify(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        if (!token.startsWith(HEADER) || token.indexOf('.') != HEADER.length() || signatureStart == HEADER.length()) {
+            return Optional.empty();
+        }
+        try {
+            byte[] signature = DECODER.decode(token.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(sign(token.substring(0, signatureStart)), signature)) {
+                return Optional.empty();
+            }
+            TokenClaims claims = objectMapper.readValue(
+                    DECODER.decode(token.substring(HEADER.length() + 1, signatureStart)), TokenClaims.class);
+            return claims.getExp() > Instant.now().getEpochSecond()
+                    ? Optional.of(claims)
+                    : Optional.empty();
+        } catch (IllegalArgumentException | IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private byte[] sign(String unsigned) {
+        return macs.get().doFinal(unsigned.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private byte[] toJson(TokenClaims claims) {
+        try {
+            return objectMapper.writeValueAsBytes(claims);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Can't serialize token claims", e);
+        }
+    }
+
+    private static byte[] secret(String configured) {
+        if (!StringUtils.hasText(configured)) {
+            log.warn("app.auth.token.secret is not set, tokens will be signed with a random key " +
+                    "and will not be accepted after restart or by other instances");
+            byte[] random = new byte[MIN_SECRET_LENGTH];
+            new SecureRandom().nextBytes(random);
+            return random;
+        }
+        byte[] secret = configured.getBytes(StandardCharsets.UTF_8);
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("app.auth.token.secret should be at least " + MIN_SECRET_LENGTH + " bytes");
+        }
+        return secret;
+    }
+
+    private static Mac createMac(SecretKeySpec secretKey) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secretKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
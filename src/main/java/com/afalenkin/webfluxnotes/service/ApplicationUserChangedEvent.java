@@ -0,0 +1,40 @@
+package com.afalenkin.webfluxnotes.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Событие об изменении пользователя приложения (пароль, роли, удаление), по которому из кэшей аутентификации
+ * удаляются устаревшие данные. application_users меняют в обход приложения, поэтому об изменении сообщает
+ * триггер в БД, а событие публикует PostgresCacheInvalidationBus.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class ApplicationUserChangedEvent {
+
+    private static final ApplicationUserChangedEvent ALL = new ApplicationUserChangedEvent(null);
+
+    /**
+     * null - изменены все пользователи
+     */
+    private final String username;
+
+    public static ApplicationUserChangedEvent of(String username) {
+        return new ApplicationUserChangedEvent(username);
+    }
+
+    /**
+     * Неизвестно, кто изменен: например, уведомления не доходили, пока соединение с БД было потеряно
+     */
+    public static ApplicationUserChangedEvent all() {
+        return ALL;
+    }
+
+    public boolean isAll() {
+        return username == null;
+    }
+}
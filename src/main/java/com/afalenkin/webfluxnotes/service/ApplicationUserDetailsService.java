@@ -1,8 +1,14 @@
 package com.afalenkin.webfluxnotes.service;
 
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.afalenkin.webfluxnotes.domain.ApplicationUser;
 import com.afalenkin.webfluxnotes.repository.ApplicationUserRepository;
-import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
@@ -11,17 +17,50 @@ import reactor.core.publisher.Mono;
 /**
  * @author Alenkin Andrew
  * oxqq@ya.ru
+ * <p>
+ * Пользователь загружается при аутентификации каждого запроса, поэтому загруженные пользователи кэшируются.
+ * Асинхронный кэш хранит не значения, а CompletableFuture - если несколько запросов одновременно
+ * аутентифицируют одного и того же пользователя, в БД уйдет только один запрос.
+ * Если пользователь не найден - future завершится с null и в кэше ничего не останется.
+ * <p>
+ * Измененный пользователь удаляется из кэша по {@link ApplicationUserChangedEvent}. Без рассылки через
+ * PostgreSQL (app.users.cache.invalidation.enabled=false) событий нет, и изменения видны после user-ttl.
  */
 @Service
-@RequiredArgsConstructor
 public class ApplicationUserDetailsService implements ReactiveUserDetailsService {
 
-    @Autowired
-    private ApplicationUserRepository userRepository;
+    public static final String CACHE_NAME = "application_users";
+
+    private final ApplicationUserRepository userRepository;
+    private final AsyncCache<String, ApplicationUser> users;
+
+    public ApplicationUserDetailsService(ApplicationUserRepository userRepository,
+                                         AuthProperties properties,
+                                         MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.users = CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder()
+                        .maximumSize(properties.getCache().getMaximumSize())
+                        .expireAfterWrite(properties.getCache().getUserTtl())
+                        .recordStats()
+                        .buildAsync(),
+                CACHE_NAME);
+    }
 
     @Override
     public Mono<UserDetails> findByUsername(String username) {
-        return userRepository.findByUsername(username)
+        return Mono.fromFuture(() -> users.get(username, (key, executor) -> userRepository.findByUsername(key)
+                        .contextWrite(DataSourceRoutes.readOnly())
+                        .toFuture()))
                 .cast(UserDetails.class);
     }
+
+    @EventListener
+    public void onApplicationUserChanged(ApplicationUserChangedEvent event) {
+        if (event.isAll()) {
+            users.synchronous().invalidateAll();
+        } else {
+            users.synchronous().invalidate(event.getUsername());
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Собирает одновременные загрузки пользователей в пачку и выполняет их одним запросом WHERE id = ANY(...),
+ * как DataLoader. Пачка отправляется через window после первого запроса или сразу, когда в ней
+ * набралось maxBatchSize идентификаторов. Одинаковые идентификаторы в одной пачке загружаются один раз.
+ * <p>
+ * Полезно, когда много клиентов одновременно запрашивают разных пользователей: вместо N запросов к БД
+ * выполняется N / maxBatchSize. Цена - задержка до window на каждую загрузку, поэтому по умолчанию выключено.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.users.loader", name = "batching", havingValue = "true")
+public class BatchingUserLoader implements UserLoader {
+
+    private final UsersRepository repository;
+    private final UsersProperties.Loader properties;
+    private final Scheduler scheduler;
+
+    private Batch current = new Batch();
+
+    @Autowired
+    public BatchingUserLoader(UsersRepository repository, UsersProperties properties) {
+        this(repository, properties, Schedulers.parallel());
+    }
+
+    BatchingUserLoader(UsersRepository repository, UsersProperties properties, Scheduler scheduler) {
+        this.repository = repository;
+        this.properties = properties.getLoader();
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<User> load(int id) {
+        return Mono.defer(() -> {
+            Sinks.One<User> result;
+            Batch scheduled = null;
+            Batch full = null;
+            synchronized (this) {
+                Batch batch = current;
+                if (batch.requests.isEmpty()) {
+                    scheduled = batch;
+                }
+                result = batch.requests.computeIfAbsent(id, key -> Sinks.one());
+                if (batch.requests.size() >= properties.getMaxBatchSize()) {
+                    current = new Batch();
+                    full = batch;
+                }
+            }
+            if (full != null) {
+                flush(full);
+            } else if (scheduled != null) {
+                Batch batch = scheduled;
+                scheduler.schedule(() -> flush(batch), properties.getWindow().toNanos(), TimeUnit.NANOSECONDS);
+            }
+            return result.asMono();
+        });
+    }
+
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (batch.flushed) {
+                return;
+            }
+            batch.flushed = true;
+            if (current == batch) {
+                current = new Batch();
+            }
+        }
+        Integer[] ids = batch.requests.keySet().toArray(new Integer[0]);
+        String[] keys = batch.requests.keySet().stream().map(DataSourceRoutes::userKey).toArray(String[]::new);
+        repository.findByIds(ids)
+                .collectMap(User::getId)
+                .contextWrite(DataSourceRoutes.readOnly(keys))
+                .subscribe(users -> batch.requests.forEach((id, result) -> {
+                            User user = users.get(id);
+                            if (user == null) {
+                                result.tryEmitEmpty();
+                            } else {
+                                result.tryEmitValue(user);
+                            }
+                        }),
+                        error -> {
+                            log.warn("Failed to load users {}", batch.requests.keySet(), error);
+                            batch.requests.values().forEach(result -> result.tryEmitError(error));
+                        });
+    }
+
+    /**
+     * Изменяется только под блокировкой загрузчика, после flushed - только читается
+     */
+    private static final class Batch {
+
+        private final Map<Integer, Sinks.One<User>> requests = new LinkedHashMap<>();
+        private boolean flushed;
+    }
+}
@@ -0,0 +1,29 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Каждый пользователь загружается отдельным запросом
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.users.loader", name = "batching", havingValue = "false", matchIfMissing = true)
+public class DirectUserLoader implements UserLoader {
+
+    private final UsersRepository repository;
+
+    @Override
+    public Mono<User> load(int id) {
+        return repository.findById(id)
+                .contextWrite(DataSourceRoutes.readOnly(DataSourceRoutes.userKey(id)));
+    }
+}
@@ -0,0 +1,16 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Загрузка одного пользователя из БД при промахе кэша.
+ * Реализация выбирается настройкой app.users.loader.batching.
+ */
+public interface UserLoader {
+
+    Mono<User> load(int id);
+}
@@ -1,17 +1,33 @@
 package com.afalenkin.webfluxnotes.service;
 
+import com.afalenkin.webfluxnotes.cache.CacheInvalidationBus;
+import com.afalenkin.webfluxnotes.cache.UserCache;
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.ImportProgress;
+import com.afalenkin.webfluxnotes.domain.LoadReport;
 import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.domain.UsersPage;
+import com.afalenkin.webfluxnotes.exception.InvalidRequestException;
+import com.afalenkin.webfluxnotes.repository.UsersBulkLoader;
 import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import com.afalenkin.webfluxnotes.routing.ReadYourWrites;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * @author Alenkin Andrew
@@ -21,43 +37,268 @@ import java.util.List;
 @Slf4j
 @RequiredArgsConstructor
 public class UserService {
+
+    /**
+     * Максимальный размер страницы - ответ и работа БД не должны расти вместе с таблицей
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Максимальное количество пользователей, запрашиваемых по идентификаторам за раз
+     */
+    public static final int MAX_IDS = 500;
+
+    /**
+     * Триграммный индекс помогает только запросам хотя бы из трех символов,
+     * более короткая подстрока означает чтение всей таблицы
+     */
+    public static final int MIN_SUBSTRING_LENGTH = 3;
+
+    private static final InvalidRequestException NOT_POSITIVE_LIMIT =
+            new InvalidRequestException("Limit should be positive.");
+    private static final InvalidRequestException BLANK_QUERY =
+            new InvalidRequestException("Search query should not be blank.");
+    private static final InvalidRequestException UNSUPPORTED_QUERY =
+            new InvalidRequestException("Unsupported search query.");
+    private static final InvalidRequestException SHORT_QUERY = new InvalidRequestException(
+            "Search query should contain at least " + MIN_SUBSTRING_LENGTH + " characters.");
+    private static final InvalidRequestException TOO_MANY_IDS =
+            new InvalidRequestException("Too many ids, at most " + MAX_IDS + " allowed.");
+    private static final InvalidRequestException NOT_NULL_ID =
+            new InvalidRequestException("Object should have nullable ID.");
+
     private final UsersRepository repository;
+    private final UsersProperties properties;
+    private final UserCache userCache;
+    private final CacheInvalidationBus invalidationBus;
+    private final UsersBulkLoader bulkLoader;
+    private final UserLoader userLoader;
+    private final ReadYourWrites readYourWrites;
 
     public Flux<User> getAll() {
-        return repository.findAll();
+        return repository.findAll()
+                .contextWrite(DataSourceRoutes.readOnly());
+    }
+
+    /**
+     * Потоковая выборка для отдачи клиенту по мере чтения из БД.
+     * limitRate не дает запросить у источника больше элементов, чем клиент успевает забрать,
+     * а fetchSize ограничивает количество строк, которые драйвер читает из курсора за раз.
+     */
+    public Flux<User> stream() {
+        UsersProperties.Stream stream = properties.getStream();
+        return repository.streamAll(stream.getFetchSize())
+                .limitRate(stream.getLimitRate())
+                .contextWrite(DataSourceRoutes.readOnly());
+    }
+
+    /**
+     * Из БД запрашивается на одну запись больше, чем размер страницы.
+     * Если лишняя запись пришла - значит есть следующая страница, и ее курсором будет
+     * идентификатор последнего пользователя текущей страницы.
+     */
+    public Mono<UsersPage> getPage(int after, int limit) {
+        if (limit < 1) {
+            return Mono.error(NOT_POSITIVE_LIMIT);
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        return repository.findPage(after, pageSize + 1)
+                .collectList()
+                .map(users -> users.size() > pageSize
+                        ? new UsersPage(users.subList(0, pageSize), users.get(pageSize - 1).getId())
+                        : new UsersPage(users, null))
+                .contextWrite(DataSourceRoutes.readOnly());
+    }
+
+    /**
+     * Поиск по имени без учета регистра - по началу имени или по подстроке.
+     * Результаты упорядочены по идентификатору, следующая страница начинается после последнего полученного.
+     * Отметка о чтении из реплики ставится снаружи репозитория: он выполняет поиск в транзакции,
+     * и соединение для нее выбирается по этой отметке.
+     */
+    public Flux<User> search(String query, boolean prefix, int after, int limit) {
+        if (query == null || query.isBlank()) {
+            return Flux.error(BLANK_QUERY);
+        }
+        if (limit < 1) {
+            return Flux.error(NOT_POSITIVE_LIMIT);
+        }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        if (prefix) {
+            String from = query.toLowerCase(Locale.ROOT);
+            String to = nextPrefix(from);
+            if (to == null) {
+                return Flux.error(UNSUPPORTED_QUERY);
+            }
+            return repository.findByNamePrefix(from, to, after, pageSize)
+                    .contextWrite(DataSourceRoutes.readOnly());
+        }
+        if (query.codePointCount(0, query.length()) < MIN_SUBSTRING_LENGTH) {
+            return Flux.error(SHORT_QUERY);
+        }
+        String pattern = "%" + escapeLike(query) + "%";
+        return repository.findByNameContaining(pattern, after, pageSize)
+                .contextWrite(DataSourceRoutes.readOnly());
     }
 
     public Mono<User> getById(int id) {
-        return repository.findById(id);
+        return userCache.get(id, userLoader::load);
+    }
+
+    /**
+     * Несколько пользователей одним запросом. Повторяющиеся идентификаторы учитываются один раз,
+     * отсутствующие пользователи пропускаются.
+     */
+    public Flux<User> getByIds(Collection<Integer> ids) {
+        Integer[] distinct = ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toArray(Integer[]::new);
+        if (distinct.length > MAX_IDS) {
+            return Flux.error(TOO_MANY_IDS);
+        }
+        if (distinct.length == 0) {
+            return Flux.empty();
+        }
+        return repository.findByIds(distinct)
+                .contextWrite(DataSourceRoutes.readOnly());
     }
 
     public Mono<User> save(User newUser) {
         if (newUser.getId() != null) {
-            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Object should have nullable ID."));
+            return Mono.error(NOT_NULL_ID);
         }
-        return repository.save(newUser);
+        return repository.save(newUser)
+                .flatMap(saved -> readYourWrites.written().thenReturn(saved));
     }
 
-    @Transactional
+    /**
+     * Все пользователи проверяются до записи, поэтому при ошибке в БД не уходит ни одного запроса.
+     * Запись идет пачками многострочных INSERT в одной транзакции (см. UsersRepositoryCustom#insertAll).
+     * Кэш не сбрасывается: новых идентификаторов в нем быть не может, отсутствующие пользователи не кэшируются.
+     */
     public Flux<User> save(List<User> users) {
-        return repository.saveAll(users)
-                .doOnNext(this::validate);
+        return Mono.fromRunnable(() -> users.forEach(this::validate))
+                .thenMany(Flux.defer(() -> repository.insertAll(users, properties.getBatch().getChunkSize())))
+                .concatWith(readYourWrites.written().then(Mono.empty()));
+    }
+
+    /**
+     * Потоковый импорт: пользователи проверяются по мере чтения запроса и записываются пачками.
+     * concatMap с prefetch 1 запрашивает следующую пачку, только когда предыдущая записана, поэтому
+     * чтение из сокета идет со скоростью записи в БД, а в памяти находится не больше двух пачек.
+     * Каждая пачка записывается отдельно: при ошибке БД уже записанные пачки остаются в таблице.
+     * Невалидные пользователи не прерывают импорт, а учитываются в счетчике failed.
+     * После каждой пачки возвращается общий счет с начала импорта.
+     */
+    public Flux<ImportProgress> importUsers(Flux<User> users) {
+        int chunkSize = properties.getBatch().getChunkSize();
+        return users.buffer(chunkSize)
+                .concatMap(chunk -> importChunk(chunk, chunkSize), 1)
+                .scan(ImportProgress::plus)
+                .concatWith(readYourWrites.written().then(Mono.empty()));
+    }
+
+    /**
+     * Массовая загрузка через COPY для очень больших объемов.
+     * В отличие от importUsers вся загрузка выполняется одной командой: либо записаны все валидные пользователи,
+     * либо ни одного. Невалидные пользователи отбрасываются и учитываются в отчете.
+     */
+    public Mono<LoadReport> load(Flux<User> users) {
+        return Mono.defer(() -> {
+            AtomicLong failed = new AtomicLong();
+            long start = System.nanoTime();
+            Flux<User> valid = users.filter(user -> {
+                boolean isValid = isValidNew(user);
+                if (!isValid) {
+                    failed.incrementAndGet();
+                }
+                return isValid;
+            });
+            return bulkLoader.copy(valid, properties.getCopy().getFlushRows())
+                    .map(loaded -> LoadReport.of(loaded, failed.get(), Duration.ofNanos(System.nanoTime() - start)))
+                    .doOnNext(report -> log.info("Loaded {} users in {} ms ({} rows/sec), {} failed",
+                            report.getLoaded(), report.getDurationMillis(), report.getRowsPerSecond(),
+                            report.getFailed()))
+                    .flatMap(report -> readYourWrites.written().thenReturn(report));
+        });
+    }
+
+    private Mono<ImportProgress> importChunk(List<User> chunk, int chunkSize) {
+        Map<Boolean, List<User>> byValidity = chunk.stream()
+                .collect(Collectors.partitioningBy(UserService::isValidNew));
+        long failed = byValidity.get(false).size();
+        List<User> valid = byValidity.get(true);
+        if (valid.isEmpty()) {
+            return Mono.just(new ImportProgress(0, failed));
+        }
+        return repository.insertAll(valid, chunkSize)
+                .count()
+                .map(imported -> new ImportProgress(imported, failed));
     }
 
     private void validate(User user) {
-        if (user.getName().isEmpty()) {
+        if (user.getId() != null) {
+            throw NOT_NULL_ID;
+        }
+        if (!hasName(user)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "invalid user for update " + user.getId());
         }
     }
 
+    private static boolean isValidNew(User user) {
+        return user.getId() == null && hasName(user);
+    }
+
+    /**
+     * Наименьшая строка, которая больше всех строк, начинающихся с prefix: последний символ увеличивается на единицу.
+     * Порядок кодовых точек совпадает с побайтовым порядком UTF-8, в котором сравнивает индекс.
+     * Если увеличить нечего (строка только из максимальных символов) - null.
+     */
+    static String nextPrefix(String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int last = prefix.codePointBefore(end);
+            end -= Character.charCount(last);
+            if (last < Character.MAX_CODE_POINT) {
+                int next = last + 1 == Character.MIN_SURROGATE ? Character.MAX_SURROGATE + 1 : last + 1;
+                return prefix.substring(0, end) + new String(Character.toChars(next));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Символы шаблона LIKE в запросе пользователя ищутся как обычные символы
+     */
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    private static boolean hasName(User user) {
+        return user.getName() != null && !user.getName().isEmpty();
+    }
+
+    /**
+     * Изменение выполняется одним запросом UPDATE ... WHERE id = ?, без предварительного чтения пользователя.
+     * Если не изменилась ни одна строка - пользователя нет, и результат пустой, как и раньше.
+     * Запись в кэше сбрасывается после успешного изменения на всех экземплярах приложения.
+     * Изменение отмечается до сброса кэша, чтобы повторная загрузка пользователя в кэш шла из основной БД.
+     */
     public Mono<Void> update(User updatedUser) {
-        return getById(updatedUser.getId())
-                .flatMap(userFromDb -> repository.save(updatedUser))
-                .then();
+        int id = updatedUser.getId();
+        return repository.updateName(id, updatedUser.getName())
+                .filter(updated -> updated > 0)
+                .flatMap(updated -> readYourWrites.written(DataSourceRoutes.userKey(id))
+                        .then(invalidationBus.invalidate(id)));
     }
 
     public Mono<Void> delete(int id) {
-        return getById(id)
-                .flatMap(repository::delete);
+        return repository.deleteUser(id)
+                .filter(deleted -> deleted > 0)
+                .flatMap(deleted -> readYourWrites.written(DataSourceRoutes.userKey(id))
+                        .then(invalidationBus.invalidate(id)));
     }
 }
@@ -0,0 +1,215 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Пишет пользователей в CSV прямо в буферы ответа по мере чтения из БД.
+ * Строки не собираются через конкатенацию: идентификатор пишется цифрами, имя - напрямую в буфер.
+ * В один буфер попадает rowsPerBuffer строк, чтобы не отправлять клиенту по буферу на каждую строку.
+ * Следующие строки запрашиваются у источника, только когда клиент забрал предыдущие буферы.
+ */
+@Component
+@RequiredArgsConstructor
+public class UsersCsvWriter {
+
+    static final String HEADER = "id,name\n";
+
+    /**
+     * Примерный размер строки, чтобы буфер не пришлось увеличивать
+     */
+    private static final int ESTIMATED_ROW_SIZE = 32;
+
+    private final UsersProperties properties;
+
+    public Flux<DataBuffer> write(Flux<User> users, DataBufferFactory bufferFactory, boolean gzip) {
+        int rowsPerBuffer = properties.getExport().getRowsPerBuffer();
+        Flux<DataBuffer> csv = Mono.fromSupplier(() -> bufferFactory.allocateBuffer(HEADER.length())
+                        .write(HEADER, StandardCharsets.UTF_8))
+                .concatWith(users.buffer(rowsPerBuffer)
+                        .map(rows -> write(rows, bufferFactory.allocateBuffer(rows.size() * ESTIMATED_ROW_SIZE))));
+        if (!gzip) {
+            return csv;
+        }
+        return Flux.using(GzipEncoder::new,
+                encoder -> csv.map(buffer -> encoder.encode(buffer, bufferFactory))
+                        .concatWith(Mono.fromSupplier(() -> encoder.finish(bufferFactory))),
+                GzipEncoder::close);
+    }
+
+    private static DataBuffer write(List<User> rows, DataBuffer buffer) {
+        for (User user : rows) {
+            writeId(buffer, user.getId());
+            buffer.write((byte) ',');
+            writeName(buffer, user.getName());
+            buffer.write((byte) '\n');
+        }
+        return buffer;
+    }
+
+    private static void writeId(DataBuffer buffer, Integer id) {
+        if (id == null) {
+            return;
+        }
+        int value = id;
+        if (value < 0) {
+            buffer.write((byte) '-');
+        } else {
+            value = -value;
+        }
+        // Цифры пишутся от старшей к младшей, значение отрицательное, чтобы не переполниться на Integer.MIN_VALUE
+        int divisor = -1;
+        while (value / 10 <= divisor) {
+            divisor *= 10;
+        }
+        while (divisor != 0) {
+            buffer.write((byte) ('0' + value / divisor));
+            value %= divisor;
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Имя берется в кавычки, только если в нем есть символы, которые ломают разбор CSV
+     */
+    private static void writeName(DataBuffer buffer, String name) {
+        if (name == null) {
+            return;
+        }
+        if (!needsQuotes(name)) {
+            buffer.write(name, StandardCharsets.UTF_8);
+            return;
+        }
+        buffer.write((byte) '"');
+        int from = 0;
+        for (int quote = name.indexOf('"'); quote >= 0; quote = name.indexOf('"', from)) {
+            buffer.write(name.subSequence(from, quote + 1), StandardCharsets.UTF_8);
+            buffer.write((byte) '"');
+            from = quote + 1;
+        }
+        buffer.write(name.subSequence(from, name.length()), StandardCharsets.UTF_8);
+        buffer.write((byte) '"');
+    }
+
+    private static boolean needsQuotes(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Сжимает поток буферов одним gzip-потоком. Deflater читает строки прямо из буфера и пишет сжатые данные
+     * прямо в буфер ответа - без промежуточных массивов. Заголовок и окончание gzip (CRC32 и длина)
+     * пишутся здесь же. После каждого буфера выполняется SYNC_FLUSH, поэтому сжатые данные уходят клиенту сразу,
+     * а не копятся в Deflater.
+     */
+    private static final class GzipEncoder {
+
+        /**
+         * Сигнатура, метод deflate, без флагов и времени изменения, ОС не указана - как у GZIPOutputStream
+         */
+        private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+        private static final int TRAILER_SIZE = 8;
+
+        /**
+         * Запас под служебные данные deflate, когда строки почти не сжимаются
+         */
+        private static final int DEFLATE_OVERHEAD = 64;
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private boolean headerWritten;
+
+        private DataBuffer encode(DataBuffer plain, DataBufferFactory bufferFactory) {
+            DataBuffer compressed = bufferFactory.allocateBuffer(
+                    HEADER.length + plain.readableByteCount() + DEFLATE_OVERHEAD);
+            try {
+                writeHeader(compressed);
+                ByteBuffer input = plain.asByteBuffer();
+                crc.update(input.duplicate());
+                deflater.setInput(input);
+                deflate(compressed, false);
+                return compressed;
+            } catch (RuntimeException e) {
+                DataBufferUtils.release(compressed);
+                throw e;
+            } finally {
+                DataBufferUtils.release(plain);
+            }
+        }
+
+        private DataBuffer finish(DataBufferFactory bufferFactory) {
+            DataBuffer trailer = bufferFactory.allocateBuffer(HEADER.length + DEFLATE_OVERHEAD + TRAILER_SIZE);
+            try {
+                writeHeader(trailer);
+                deflater.finish();
+                deflate(trailer, true);
+                trailer.ensureCapacity(TRAILER_SIZE);
+                writeIntLe(trailer, (int) crc.getValue());
+                writeIntLe(trailer, (int) deflater.getBytesRead());
+                return trailer;
+            } catch (RuntimeException e) {
+                DataBufferUtils.release(trailer);
+                throw e;
+            }
+        }
+
+        /**
+         * Освобождает память Deflater. Если экспорт прерван - остаток сжатых данных никуда не пишется.
+         */
+        private void close() {
+            deflater.end();
+        }
+
+        private void writeHeader(DataBuffer buffer) {
+            if (!headerWritten) {
+                buffer.write(HEADER);
+                headerWritten = true;
+            }
+        }
+
+        /**
+         * Сжатые данные пишутся в свободное место буфера. Если оно кончилось - буфер увеличивается,
+         * пока Deflater не отдаст все: для SYNC_FLUSH это значит, что место осталось, для завершения - finished().
+         */
+        private void deflate(DataBuffer compressed, boolean finish) {
+            while (true) {
+                compressed.ensureCapacity(DEFLATE_OVERHEAD);
+                int position = compressed.writePosition();
+                ByteBuffer output = compressed.asByteBuffer(position, compressed.writableByteCount());
+                int written = deflater.deflate(output, finish ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                compressed.writePosition(position + written);
+                if (finish ? deflater.finished() : output.hasRemaining()) {
+                    return;
+                }
+            }
+        }
+
+        private static void writeIntLe(DataBuffer buffer, int value) {
+            buffer.write((byte) value);
+            buffer.write((byte) (value >>> 8));
+            buffer.write((byte) (value >>> 16));
+            buffer.write((byte) (value >>> 24));
+        }
+    }
+}
@@ -0,0 +1,6 @@
+-- Идентификатор пользователя определяет его шард: id % shardCount = shardIndex (см. ShardedUsersRepository).
+-- Каждый шард выдает идентификаторы из своей последовательности только со своим остатком, поэтому
+-- шарды не пересекаются и не согласуют идентификаторы между собой.
+-- Столбец id - integer: каждый шард может выдать не больше 2^31 / shardCount идентификаторов.
+-- Значения подставляет ShardingConfig; миграция повторяется, когда они меняются.
+ALTER TABLE users ALTER COLUMN id SET DEFAULT nextval('users_id_seq') * ${shardCount} + ${shardIndex};
@@ -0,0 +1,16 @@
+-- Таблицы до появления миграций создавались вручную, поэтому IF NOT EXISTS:
+-- на существующей БД миграция ничего не меняет, на пустой - создает схему с нуля.
+CREATE TABLE IF NOT EXISTS users
+(
+    id   SERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS application_users
+(
+    id          SERIAL PRIMARY KEY,
+    name        VARCHAR(255),
+    username    VARCHAR(255),
+    password    VARCHAR(255),
+    authorities VARCHAR(255)
+);
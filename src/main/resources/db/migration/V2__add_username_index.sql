@@ -0,0 +1,3 @@
+-- findByUsername выполняется на каждый аутентифицированный запрос.
+-- Пагинация и выборка по идентификаторам используют первичный ключ users.
+CREATE UNIQUE INDEX IF NOT EXISTS application_users_username_idx ON application_users (username);
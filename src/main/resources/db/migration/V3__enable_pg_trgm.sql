@@ -0,0 +1,2 @@
+-- Триграммы для поиска пользователей по подстроке имени
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
@@ -0,0 +1,8 @@
+-- CONCURRENTLY не блокирует запись в таблицу на время построения индекса, поэтому миграция выполняется
+-- вне транзакции. Если построение прервется, останется невалидный индекс - его найдет проверка схемы при запуске.
+
+-- Поиск по подстроке: name ILIKE '%...%'
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_name_trgm_idx ON users USING gin (name gin_trgm_ops);
+
+-- Поиск по началу имени без учета регистра: диапазон lower(name) с побайтовым сравнением
+CREATE INDEX CONCURRENTLY IF NOT EXISTS users_name_prefix_idx ON users (lower(name) text_pattern_ops);
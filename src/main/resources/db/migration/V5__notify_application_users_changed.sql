@@ -0,0 +1,34 @@
+-- application_users меняют в обход приложения, поэтому о смене пароля, ролей или удалении сообщает БД:
+-- имя измененного пользователя уходит в канал application_users_changed, который слушает
+-- PostgresCacheInvalidationBus, и пользователь удаляется из кэшей аутентификации на всех экземплярах.
+-- NOTIFY доставляется после commit. Пустое сообщение (TRUNCATE) - изменены все пользователи.
+CREATE OR REPLACE FUNCTION notify_application_users_changed() RETURNS trigger AS
+$$
+BEGIN
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('application_users_changed', '');
+        RETURN NULL;
+    END IF;
+    IF OLD.username IS NOT NULL THEN
+        PERFORM pg_notify('application_users_changed', OLD.username);
+    END IF;
+    IF TG_OP = 'UPDATE' AND NEW.username IS DISTINCT FROM OLD.username AND NEW.username IS NOT NULL THEN
+        PERFORM pg_notify('application_users_changed', NEW.username);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS application_users_changed ON application_users;
+CREATE TRIGGER application_users_changed
+    AFTER UPDATE OR DELETE
+    ON application_users
+    FOR EACH ROW
+EXECUTE PROCEDURE notify_application_users_changed();
+
+DROP TRIGGER IF EXISTS application_users_truncated ON application_users;
+CREATE TRIGGER application_users_truncated
+    AFTER TRUNCATE
+    ON application_users
+    FOR EACH STATEMENT
+EXECUTE PROCEDURE notify_application_users_changed();
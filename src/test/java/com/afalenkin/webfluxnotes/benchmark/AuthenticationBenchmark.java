@@ -0,0 +1,89 @@
+package com.afalenkin.webfluxnotes.benchmark;
+
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.afalenkin.webfluxnotes.domain.ApplicationUser;
+import com.afalenkin.webfluxnotes.security.CachingReactiveAuthenticationManager;
+import com.afalenkin.webfluxnotes.security.TokenAuthentication;
+import com.afalenkin.webfluxnotes.security.TokenAuthenticationManager;
+import com.afalenkin.webfluxnotes.security.TokenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Сколько запросов в секунду может аутентифицировать один поток:
+ * по паролю (HTTP Basic), по паролю через кэш проверенных учетных данных и по подписанному токену.
+ * Пользователи хранятся в памяти, поэтому в реальном приложении Basic без кэша медленнее еще на запрос в БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthenticationBenchmark {
+
+    private ReactiveAuthenticationManager basic;
+    private ReactiveAuthenticationManager cachedBasic;
+    private ReactiveAuthenticationManager token;
+
+    private Authentication credentials;
+    private Authentication bearer;
+
+    @Setup
+    public void setUp() {
+        ApplicationUser user = new ApplicationUser(1, "God", "god",
+                PasswordEncoderFactories.createDelegatingPasswordEncoder().encode("root"), "ROLE_ADMIN,ROLE_USER");
+        MapReactiveUserDetailsService users = new MapReactiveUserDetailsService(user);
+
+        basic = new UserDetailsRepositoryReactiveAuthenticationManager(users);
+        cachedBasic = new CachingReactiveAuthenticationManager(
+                new UserDetailsRepositoryReactiveAuthenticationManager(users),
+                new AuthProperties.Cache(),
+                new SimpleMeterRegistry());
+
+        AuthProperties properties = new AuthProperties();
+        properties.getToken().setSecret("0123456789abcdef0123456789abcdef");
+        TokenService tokenService = new TokenService(properties, new ObjectMapper());
+        token = new TokenAuthenticationManager(tokenService);
+
+        credentials = UsernamePasswordAuthenticationToken.unauthenticated("god", "root");
+        bearer = TokenAuthentication.unauthenticated(
+                tokenService.issue(user.getUsername(), user.getAuthorities()).getAccessToken());
+    }
+
+    @Benchmark
+    public Authentication basic() {
+        return basic.authenticate(credentials).block();
+    }
+
+    @Benchmark
+    public Authentication cachedBasic() {
+        return cachedBasic.authenticate(credentials).block();
+    }
+
+    @Benchmark
+    public Authentication token() {
+        return token.authenticate(bearer).block();
+    }
+}
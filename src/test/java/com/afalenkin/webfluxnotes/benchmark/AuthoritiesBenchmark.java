@@ -0,0 +1,75 @@
+package com.afalenkin.webfluxnotes.benchmark;
+
+import com.afalenkin.webfluxnotes.domain.ApplicationUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Стоимость получения ролей пользователя за один запрос: Spring Security обращается к ним несколько раз,
+ * поэтому одна операция бенчмарка - это три вызова getAuthorities().
+ * <ul>
+ *     <li>split - прежняя реализация, которая разбирала строку и создавала новый список при каждом вызове</li>
+ *     <li>cached - пользователь уже загружен и роли у него уже разобраны</li>
+ *     <li>materialized - пользователь только что загружен из БД (или кэша) и роли запрашиваются впервые</li>
+ * </ul>
+ * Аллокации на операцию видны с профилировщиком: mvn -Pbenchmark verify -Djmh.include=Authorities -Djmh.args="-prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthoritiesBenchmark {
+
+    private String roles = "ROLE_ADMIN,ROLE_USER";
+
+    private ApplicationUser user;
+
+    @Setup
+    public void setUp() {
+        user = new ApplicationUser(1, "God", "god", "root", roles);
+        user.getAuthorities();
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        for (int i = 0; i < 3; i++) {
+            blackhole.consume(Arrays.stream(roles.split(","))
+                    .map(SimpleGrantedAuthority::new)
+                    .collect(Collectors.toList()));
+        }
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        for (int i = 0; i < 3; i++) {
+            blackhole.consume(user.getAuthorities());
+        }
+    }
+
+    @Benchmark
+    public void materialized(Blackhole blackhole) {
+        ApplicationUser loaded = new ApplicationUser(1, "God", "god", "root", roles);
+        for (int i = 0; i < 3; i++) {
+            blackhole.consume(loaded.getAuthorities());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.afalenkin.webfluxnotes.benchmark;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.exception.UserNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Стоимость ошибки для отсутствующего пользователя в UsersController.getById:
+ * <ul>
+ *     <li>eager - исключение с трассировкой стека создается при каждом вызове, как было раньше;</li>
+ *     <li>preallocated - общий экземпляр UserNotFoundException без трассировки стека.</li>
+ * </ul>
+ * found* - пользователь найден: раньше исключение создавалось и в этом случае, потому что аргумент switchIfEmpty
+ * вычисляется при каждом вызове. missing* - пользователь не найден.
+ * <p>
+ * Стоимость трассировки растет с глубиной стека, а обработчик запроса в WebFlux вызывается глубоко:
+ * depth - сколько кадров добавляется в стек перед вызовом. Выделение памяти: -Djmh.args="-prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorPathBenchmark {
+
+    private final Mono<User> found = Mono.just(new User(1, "user1"));
+    private final Mono<User> missing = Mono.empty();
+
+    @Param({"16", "128"})
+    private int depth;
+
+    @Benchmark
+    public void foundEager(Blackhole blackhole) {
+        subscribe(atDepth(depth, () -> getByIdEager(found)), blackhole);
+    }
+
+    @Benchmark
+    public void foundPreallocated(Blackhole blackhole) {
+        subscribe(atDepth(depth, () -> getByIdPreallocated(found)), blackhole);
+    }
+
+    @Benchmark
+    public void missingEager(Blackhole blackhole) {
+        subscribe(atDepth(depth, () -> getByIdEager(missing)), blackhole);
+    }
+
+    @Benchmark
+    public void missingPreallocated(Blackhole blackhole) {
+        subscribe(atDepth(depth, () -> getByIdPreallocated(missing)), blackhole);
+    }
+
+    private static Mono<User> getByIdEager(Mono<User> user) {
+        return user.switchIfEmpty(Mono.error(
+                new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ooops, something went wrong...")));
+    }
+
+    private static Mono<User> getByIdPreallocated(Mono<User> user) {
+        return user.switchIfEmpty(Mono.error(UserNotFoundException.INSTANCE));
+    }
+
+    private static void subscribe(Mono<User> user, Blackhole blackhole) {
+        user.subscribe(blackhole::consume, blackhole::consume);
+    }
+
+    private static <T> T atDepth(int depth, Supplier<T> call) {
+        return depth == 0 ? call.get() : atDepth(depth - 1, call);
+    }
+}
@@ -0,0 +1,117 @@
+package com.afalenkin.webfluxnotes.benchmark;
+
+import com.afalenkin.webfluxnotes.exception.CustomAttributes;
+import com.afalenkin.webfluxnotes.exception.GlobalExceptionHandler;
+import com.afalenkin.webfluxnotes.exception.UserNotFoundException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.WebProperties;
+import org.springframework.boot.web.error.ErrorAttributeOptions;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.i18n.LocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionManager;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Стоимость ответа об ошибке:
+ * <ul>
+ *     <li>errorAttributes - атрибуты ошибки из CustomAttributes, как для обычного ответа</li>
+ *     <li>errorAttributesWithTrace - то же с трассировкой стека (параметр trace=true)</li>
+ *     <li>errorResponse - весь ответ GlobalExceptionHandler вместе с сериализацией в JSON</li>
+ *     <li>domainErrorResponse - то же для UserNotFoundException, которое getById отдает вместо
+ *     ResponseStatusException</li>
+ * </ul>
+ * Исключение создается один раз: стоимость его создания здесь не учитывается.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErrorResponseBenchmark {
+
+    private final ResponseStatusException error =
+            new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ooops, something went wrong...");
+
+    private final ServerCodecConfigurer codecs = ServerCodecConfigurer.create();
+    private final WebSessionManager sessionManager = new DefaultWebSessionManager();
+    private final LocaleContextResolver localeContextResolver = new AcceptHeaderLocaleContextResolver();
+
+    private CustomAttributes errorAttributes;
+    private GlobalExceptionHandler exceptionHandler;
+    private ServerRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        errorAttributes = new CustomAttributes();
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        exceptionHandler = new GlobalExceptionHandler(errorAttributes, new WebProperties(), context, codecs);
+        exceptionHandler.afterPropertiesSet();
+
+        ServerWebExchange exchange = exchange();
+        errorAttributes.storeErrorInformation(error, exchange);
+        request = ServerRequest.create(exchange, codecs.getReaders());
+    }
+
+    @Benchmark
+    public Map<String, Object> errorAttributes() {
+        return errorAttributes.getErrorAttributes(request, ErrorAttributeOptions.defaults());
+    }
+
+    @Benchmark
+    public Map<String, Object> errorAttributesWithTrace() {
+        return errorAttributes.getErrorAttributes(request,
+                ErrorAttributeOptions.of(ErrorAttributeOptions.Include.STACK_TRACE));
+    }
+
+    /**
+     * Для каждого ответа нужен новый обмен: ответ можно записать только один раз
+     */
+    @Benchmark
+    public Object errorResponse() {
+        ServerWebExchange exchange = exchange();
+        exceptionHandler.handle(exchange, error).block();
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block();
+    }
+
+    @Benchmark
+    public Object domainErrorResponse() {
+        ServerWebExchange exchange = exchange();
+        exceptionHandler.handle(exchange, UserNotFoundException.INSTANCE).block();
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block();
+    }
+
+    /**
+     * MockServerWebExchange создает настройки кодеков для каждого обмена, и бенчмарк измерял бы в основном их
+     */
+    private ServerWebExchange exchange() {
+        return new DefaultServerWebExchange(MockServerHttpRequest.get("/users/1").build(), new MockServerHttpResponse(),
+                sessionManager, codecs, localeContextResolver);
+    }
+}
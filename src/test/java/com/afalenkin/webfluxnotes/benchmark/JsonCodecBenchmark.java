@@ -0,0 +1,103 @@
+package com.afalenkin.webfluxnotes.benchmark;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Сериализация пользователей кодеками WebFlux с ObjectMapper, настроенным так же, как его настраивает Spring Boot.
+ * Одиночный пользователь - ответ getById и тело save, страница из 50 - ответ постраничного запроса.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private static final ResolvableType USER = ResolvableType.forClass(User.class);
+    private static final ResolvableType USERS = ResolvableType.forClassWithGenerics(List.class, User.class);
+
+    private final DefaultDataBufferFactory bufferFactory = DefaultDataBufferFactory.sharedInstance;
+
+    private Jackson2JsonEncoder encoder;
+    private Jackson2JsonDecoder decoder;
+
+    private User user;
+    private List<User> page;
+    private byte[] userJson;
+    private byte[] pageJson;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder objectMapper = Jackson2ObjectMapperBuilder.json();
+        encoder = new Jackson2JsonEncoder(objectMapper.build());
+        decoder = new Jackson2JsonDecoder(objectMapper.build());
+
+        user = new User(1000, "user1000");
+        page = IntStream.rangeClosed(1, 50)
+                .mapToObj(id -> new User(id, "user" + id))
+                .collect(Collectors.toList());
+        userJson = bytes(encoder.encodeValue(user, bufferFactory, USER, MediaType.APPLICATION_JSON, null));
+        pageJson = bytes(encoder.encodeValue(page, bufferFactory, USERS, MediaType.APPLICATION_JSON, null));
+    }
+
+    @Benchmark
+    public void encodeUser(Blackhole blackhole) {
+        consume(blackhole, encoder.encodeValue(user, bufferFactory, USER, MediaType.APPLICATION_JSON, null));
+    }
+
+    @Benchmark
+    public Object decodeUser() {
+        return decoder.decode(bufferFactory.wrap(userJson), USER, MediaType.APPLICATION_JSON, Collections.emptyMap());
+    }
+
+    @Benchmark
+    public void encodePage(Blackhole blackhole) {
+        consume(blackhole, encoder.encodeValue(page, bufferFactory, USERS, MediaType.APPLICATION_JSON, null));
+    }
+
+    @Benchmark
+    public Object decodePage() {
+        return decoder.decode(bufferFactory.wrap(pageJson), USERS, MediaType.APPLICATION_JSON, Collections.emptyMap());
+    }
+
+    private static void consume(Blackhole blackhole, DataBuffer buffer) {
+        blackhole.consume(buffer.readableByteCount());
+        DataBufferUtils.release(buffer);
+    }
+
+    private static byte[] bytes(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+}
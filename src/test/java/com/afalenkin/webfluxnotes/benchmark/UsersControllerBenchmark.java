@@ -0,0 +1,135 @@
+package com.afalenkin.webfluxnotes.benchmark;
+
+import com.afalenkin.webfluxnotes.cache.LocalCacheInvalidationBus;
+import com.afalenkin.webfluxnotes.cache.NoOpUserCache;
+import com.afalenkin.webfluxnotes.cache.UserCache;
+import com.afalenkin.webfluxnotes.config.ReplicasProperties;
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.controllers.UsersController;
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.exception.CustomAttributes;
+import com.afalenkin.webfluxnotes.exception.GlobalExceptionHandler;
+import com.afalenkin.webfluxnotes.repository.memory.InMemoryUsersBulkLoader;
+import com.afalenkin.webfluxnotes.repository.memory.InMemoryUsersRepository;
+import com.afalenkin.webfluxnotes.routing.ReadYourWrites;
+import com.afalenkin.webfluxnotes.service.DirectUserLoader;
+import com.afalenkin.webfluxnotes.service.UserService;
+import com.afalenkin.webfluxnotes.service.UsersCsvWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.WebProperties;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
+import org.springframework.test.web.reactive.server.MockServerConfigurer;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Полный путь запроса через UsersController без сети и БД: WebTestClient вызывает WebFlux напрямую,
+ * пользователи хранятся в памяти, как в профиле memory ({@link InMemoryUsersRepository}), кэш пользователей выключен.
+ * Из времени запроса исключена БД, а остаются маршрутизация, разбор и сериализация JSON, валидация, сервис
+ * и обработка ошибок ({@link GlobalExceptionHandler}). Spring Security не подключен: его стоимость
+ * измеряет AuthenticationBenchmark.
+ * Путь запроса длинный, и JIT компилирует его дольше, чем код микробенчмарков, поэтому прогрев увеличен.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsersControllerBenchmark {
+
+    private static final int USERS = 10_000;
+
+    private WebTestClient client;
+
+    @Setup
+    public void setUp() {
+        InMemoryUsersRepository repository = new InMemoryUsersRepository(USERS);
+        UsersProperties properties = new UsersProperties();
+        UserCache userCache = new NoOpUserCache();
+        UserService userService = new UserService(repository, properties, userCache,
+                new LocalCacheInvalidationBus(userCache), new InMemoryUsersBulkLoader(repository),
+                new DirectUserLoader(repository), new ReadYourWrites(new ReplicasProperties()));
+
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.refresh();
+        GlobalExceptionHandler exceptionHandler = new GlobalExceptionHandler(new CustomAttributes(),
+                new WebProperties(), context, ServerCodecConfigurer.create());
+
+        client = WebTestClient.bindToController(new UsersController(userService, new UsersCsvWriter(properties)))
+                .apply(new MockServerConfigurer() {
+                    @Override
+                    public void beforeServerCreated(WebHttpHandlerBuilder builder) {
+                        builder.exceptionHandlers(handlers -> handlers.add(0, exceptionHandler));
+                    }
+                })
+                .build();
+    }
+
+    @Benchmark
+    public EntityExchangeResult<User> getById() {
+        return client.get()
+                .uri("/users/{id}", USERS / 2)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(User.class)
+                .returnResult();
+    }
+
+    /**
+     * Пользователя нет: ответ об ошибке формирует GlobalExceptionHandler
+     */
+    @Benchmark
+    public EntityExchangeResult<byte[]> getMissing() {
+        return client.get()
+                .uri("/users/{id}", USERS + 1)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .returnResult();
+    }
+
+    @Benchmark
+    public EntityExchangeResult<List<User>> getPage() {
+        return client.get()
+                .uri("/users?after={after}&limit={limit}", USERS / 2, 50)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class)
+                .returnResult();
+    }
+
+    /**
+     * Каждый вызов добавляет пользователя, поэтому хранилище растет на время измерения
+     */
+    @Benchmark
+    public EntityExchangeResult<User> save() {
+        return client.post()
+                .uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new User(null, "NewUser"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(User.class)
+                .returnResult();
+    }
+}
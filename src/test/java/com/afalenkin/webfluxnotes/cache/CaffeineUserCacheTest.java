@@ -0,0 +1,118 @@
+package com.afalenkin.webfluxnotes.cache;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static com.afalenkin.webfluxnotes.util.UserData.createdUser;
+import static com.afalenkin.webfluxnotes.util.UserData.updatedUser;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class CaffeineUserCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private MeterRegistry meterRegistry;
+
+    private CaffeineUserCache userCache;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new CaffeineUserCache(new UsersProperties(), meterRegistry);
+    }
+
+    @Test
+    @DisplayName("get should load user only once")
+    void getCachedTest() {
+        StepVerifier.create(userCache.get(1, loader(Mono.just(createdUser()))))
+                .expectNext(createdUser())
+                .verifyComplete();
+        StepVerifier.create(userCache.get(1, loader(Mono.just(updatedUser()))))
+                .expectNext(createdUser())
+                .verifyComplete();
+
+        Assertions.assertEquals(1, loads.get());
+        Assertions.assertEquals(0.5, meterRegistry.get("cache.hit.ratio")
+                .tag("cache", CaffeineUserCache.CACHE_NAME)
+                .gauge().value());
+    }
+
+    @Test
+    @DisplayName("concurrent misses of the same id should share one load")
+    void getCoalescedTest() {
+        Sinks.One<User> sink = Sinks.one();
+
+        Mono<User> first = userCache.get(1, loader(sink.asMono())).cache();
+        Mono<User> second = userCache.get(1, loader(sink.asMono())).cache();
+        first.subscribe();
+        second.subscribe();
+        sink.tryEmitValue(createdUser());
+
+        StepVerifier.create(first).expectNext(createdUser()).verifyComplete();
+        StepVerifier.create(second).expectNext(createdUser()).verifyComplete();
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    @DisplayName("absent users should not be cached")
+    void getNotFoundTest() {
+        StepVerifier.create(userCache.get(2, loader(Mono.empty()))).verifyComplete();
+        StepVerifier.create(userCache.get(2, loader(Mono.empty()))).verifyComplete();
+
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("failed load should not be cached")
+    void getFailedTest() {
+        StepVerifier.create(userCache.get(1, loader(Mono.error(new IllegalStateException()))))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(userCache.get(1, loader(Mono.just(createdUser()))))
+                .expectNext(createdUser())
+                .verifyComplete();
+
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    @DisplayName("evicted user should be loaded again")
+    void evictTest() {
+        StepVerifier.create(userCache.get(1, loader(Mono.just(createdUser())))).expectNextCount(1).verifyComplete();
+        userCache.evict(1);
+        StepVerifier.create(userCache.get(1, loader(Mono.just(updatedUser()))))
+                .expectNext(updatedUser())
+                .verifyComplete();
+
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    private IntFunction<Mono<User>> loader(Mono<User> result) {
+        return id -> {
+            loads.incrementAndGet();
+            return result;
+        };
+    }
+}
@@ -0,0 +1,147 @@
+package com.afalenkin.webfluxnotes.config;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class AccessLogWebFilterTest {
+
+    private static final String HEADER = "X-Request-Id";
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(AccessLogWebFilter.LOGGER);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    private final AccessLogProperties properties = new AccessLogProperties();
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        appender.start();
+        logger.addAppender(appender);
+        properties.setSampleRate(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+    }
+
+    @Test
+    @DisplayName("correlation id from the request should be returned in the response and the log entry")
+    void correlationIdTest() {
+        properties.setSampleRate(1);
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/users/1").header(HEADER, "client-1"));
+
+        StepVerifier.create(filter().filter(exchange, e -> respond(e, HttpStatus.OK)))
+                .verifyComplete();
+
+        Assertions.assertEquals("client-1", exchange.getResponse().getHeaders().getFirst(HEADER));
+        Assertions.assertEquals("client-1", exchange.getAttribute(AccessLogWebFilter.CORRELATION_ID_ATTRIBUTE));
+        Assertions.assertEquals(1, appender.list.size());
+        Assertions.assertTrue(appender.list.get(0).getFormattedMessage().startsWith(
+                        "\"request_id\":\"client-1\",\"method\":\"GET\",\"route\":\"/users/{id}\",\"path\":\"/users/1\"," +
+                        "\"status\":200,\"duration_us\":"),
+                appender.list.get(0).getFormattedMessage());
+    }
+
+    @Test
+    @DisplayName("invalid correlation id should be replaced by the server request id")
+    void invalidCorrelationIdTest() {
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/users/1").header(HEADER, "\"},{\"x"));
+
+        StepVerifier.create(filter().filter(exchange, e -> respond(e, HttpStatus.OK)))
+                .verifyComplete();
+
+        Assertions.assertEquals(exchange.getRequest().getId(), exchange.getResponse().getHeaders().getFirst(HEADER));
+    }
+
+    @Test
+    @DisplayName("requests should be sampled by route rate, server errors should always be logged")
+    void samplingTest() {
+        properties.setRoutes(Map.of("/users/{id}", 1.0));
+        AccessLogWebFilter filter = filter();
+
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.get("/users/1")), e -> respond(e, HttpStatus.OK)))
+                .verifyComplete();
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.get("/users")), e -> respond(e, HttpStatus.OK)))
+                .verifyComplete();
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.get("/users")),
+                        e -> respond(e, HttpStatus.SERVICE_UNAVAILABLE)))
+                .verifyComplete();
+
+        Assertions.assertEquals(2, appender.list.size());
+        Assertions.assertTrue(appender.list.get(0).getFormattedMessage().contains("\"status\":200"));
+        Assertions.assertTrue(appender.list.get(1).getFormattedMessage().contains("\"status\":503"));
+    }
+
+    @Test
+    @DisplayName("failed and cancelled requests should always be logged")
+    void failedTest() {
+        AccessLogWebFilter filter = filter();
+        MockServerWebExchange failed = exchange(MockServerHttpRequest.get("/users"));
+
+        StepVerifier.create(filter.filter(failed, e -> Mono.error(new IllegalStateException())))
+                .verifyError(IllegalStateException.class);
+        StepVerifier.create(respond(failed, HttpStatus.INTERNAL_SERVER_ERROR))
+                .verifyComplete();
+        StepVerifier.create(filter.filter(exchange(MockServerHttpRequest.get("/users")), e -> Mono.never()))
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(2, appender.list.size(), messages());
+        Assertions.assertTrue(appender.list.get(0).getFormattedMessage()
+                .contains("\"status\":500,"), messages());
+        Assertions.assertTrue(appender.list.get(0).getFormattedMessage()
+                .endsWith("\"exception\":\"java.lang.IllegalStateException\""), messages());
+        Assertions.assertTrue(appender.list.get(1).getFormattedMessage().endsWith("\"cancelled\":true"), messages());
+    }
+
+    private AccessLogWebFilter filter() {
+        return new AccessLogWebFilter(properties);
+    }
+
+    private String messages() {
+        return appender.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.joining("\n"));
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        if (exchange.getRequest().getPath().value().startsWith("/users/")) {
+            exchange.getAttributes().put(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+                    PathPatternParser.defaultInstance.parse("/users/{id}"));
+        }
+        return exchange;
+    }
+
+    private static Mono<Void> respond(ServerWebExchange exchange, HttpStatus status) {
+        exchange.getResponse().setStatusCode(status);
+        return exchange.getResponse().setComplete();
+    }
+}
@@ -0,0 +1,112 @@
+package com.afalenkin.webfluxnotes.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class RequestMetricsWebFilterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final RequestMetricsWebFilter filter = new RequestMetricsWebFilter(meterRegistry);
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("completed requests should be recorded by route template, method and status")
+    void completedTest() {
+        for (int id = 1; id <= 3; id++) {
+            MockServerWebExchange exchange = exchange("/users/" + id);
+            StepVerifier.create(filter.filter(exchange, e -> respond(e, HttpStatus.OK)))
+                    .verifyComplete();
+        }
+
+        Assertions.assertEquals(3, timer("GET", "/users/{id}", "200", "SUCCESS", "None").count());
+    }
+
+    @Test
+    @DisplayName("cancel after the response was sent should be recorded as completed request")
+    void cancelledAfterResponseTest() {
+        MockServerWebExchange exchange = exchange("/users/1");
+        Sinks.Empty<Void> completion = Sinks.empty();
+
+        StepVerifier.create(filter.filter(exchange, e -> respond(e, HttpStatus.OK).then(completion.asMono())))
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(1, timer("GET", "/users/{id}", "200", "SUCCESS", "None").count());
+        Assertions.assertEquals(1, meterRegistry.get(RequestMetricsWebFilter.METRIC).timers().size());
+    }
+
+    @Test
+    @DisplayName("cancel before the response should be recorded as cancelled request")
+    void cancelledBeforeResponseTest() {
+        MockServerWebExchange exchange = exchange("/users/1");
+
+        StepVerifier.create(filter.filter(exchange, e -> Mono.never()))
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(1,
+                timer("GET", "/users/{id}", "200", "UNKNOWN", "CancelledServerWebExchangeException").count());
+    }
+
+    @Test
+    @DisplayName("error should be recorded with the status written by the error handler")
+    void errorTest() {
+        MockServerWebExchange exchange = exchange("/users/1");
+
+        StepVerifier.create(filter.filter(exchange, e -> Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND))))
+                .verifyError(ResponseStatusException.class);
+        Assertions.assertTrue(meterRegistry.find(RequestMetricsWebFilter.METRIC).timers().isEmpty());
+
+        StepVerifier.create(respond(exchange, HttpStatus.NOT_FOUND))
+                .verifyComplete();
+        Assertions.assertEquals(1,
+                timer("GET", "/users/{id}", "404", "CLIENT_ERROR", "ResponseStatusException").count());
+    }
+
+    private Timer timer(String method, String uri, String status, String outcome, String exception) {
+        return meterRegistry.get(RequestMetricsWebFilter.METRIC)
+                .tag("method", method)
+                .tag("uri", uri)
+                .tag("status", status)
+                .tag("outcome", outcome)
+                .tag("exception", exception)
+                .timer();
+    }
+
+    private static MockServerWebExchange exchange(String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        exchange.getAttributes().put(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+                PathPatternParser.defaultInstance.parse("/users/{id}"));
+        return exchange;
+    }
+
+    private static Mono<Void> respond(ServerWebExchange exchange, HttpStatus status) {
+        exchange.getResponse().setStatusCode(status);
+        return exchange.getResponse().setComplete();
+    }
+}
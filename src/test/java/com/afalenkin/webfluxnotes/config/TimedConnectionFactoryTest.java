@@ -0,0 +1,106 @@
+package com.afalenkin.webfluxnotes.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class TimedConnectionFactoryTest {
+
+    private final ConnectionFactory connectionFactory = Mockito.mock(ConnectionFactory.class);
+
+    private final Connection connection = Mockito.mock(Connection.class);
+
+    private MeterRegistry meterRegistry;
+
+    private ConnectionPool pool;
+
+    private TimedConnectionFactory timedConnectionFactory;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        BDDMockito.doReturn(Mono.just(connection)).when(connectionFactory).create();
+        BDDMockito.doReturn(Mono.empty()).when(connection).close();
+        BDDMockito.doReturn(Mono.just(true)).when(connection).validate(ArgumentMatchers.any());
+        meterRegistry = new SimpleMeterRegistry();
+        pool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(2)
+                .maxSize(2)
+                .maxAcquireTime(Duration.ofMillis(100))
+                .build());
+        timedConnectionFactory = new TimedConnectionFactory(pool, "test", meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        timedConnectionFactory.dispose();
+    }
+
+    @Test
+    @DisplayName("warmup should open initialSize connections")
+    void warmupTest() {
+        StepVerifier.create(pool.warmup())
+                .expectNext(2)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create should record acquire time")
+    void acquireTest() {
+        StepVerifier.create(timedConnectionFactory.create())
+                .expectNextCount(1)
+                .verifyComplete();
+
+        Assertions.assertEquals(1, acquireCount("success"));
+        Assertions.assertEquals(0, acquireCount("failure"));
+    }
+
+    @Test
+    @DisplayName("create should record failed acquire when pool is exhausted")
+    void acquireTimeoutTest() {
+        StepVerifier.create(timedConnectionFactory.create().repeat(2))
+                .expectNextCount(2)
+                .verifyError();
+
+        Assertions.assertEquals(2, acquireCount("success"));
+        Assertions.assertEquals(1, acquireCount("failure"));
+    }
+
+    @Test
+    @DisplayName("unwrap should return pool")
+    void unwrapTest() {
+        Assertions.assertSame(pool, timedConnectionFactory.unwrap());
+    }
+
+    private long acquireCount(String result) {
+        return meterRegistry.get(TimedConnectionFactory.ACQUIRE_METRIC)
+                .tag("name", "test")
+                .tag("result", result)
+                .timer().count();
+    }
+}
@@ -1,6 +1,11 @@
 package com.afalenkin.webfluxnotes.controllers;
 
+import com.afalenkin.webfluxnotes.domain.ImportProgress;
+import com.afalenkin.webfluxnotes.domain.LoadReport;
 import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.domain.UsersPage;
+import com.afalenkin.webfluxnotes.exception.InvalidRequestException;
+import com.afalenkin.webfluxnotes.exception.UserNotFoundException;
 import com.afalenkin.webfluxnotes.service.UserService;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -13,7 +18,6 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
-import org.springframework.web.server.ResponseStatusException;
 import reactor.blockhound.BlockHound;
 import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
@@ -76,6 +80,106 @@ class UsersControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("streamAllUsers should return a flux of users")
+    void streamAllTest() {
+        BDDMockito.when(service.stream()).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(controller.streamAllUsers())
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("importUsers should return import progress")
+    void importUsersTest() {
+        Flux<User> users = Flux.just(newUser(), newUser());
+        BDDMockito.when(service.importUsers(users)).thenReturn(Flux.just(new ImportProgress(2, 0)));
+
+        StepVerifier.create(controller.importUsers(users))
+                .expectSubscription()
+                .expectNext(new ImportProgress(2, 0))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("loadUsers should return load report")
+    void loadUsersTest() {
+        Flux<User> users = Flux.just(newUser(), newUser());
+        LoadReport report = new LoadReport(2, 0, 1, 2000);
+        BDDMockito.when(service.load(users)).thenReturn(Mono.just(report));
+
+        StepVerifier.create(controller.loadUsers(users))
+                .expectSubscription()
+                .expectNext(report)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getByIds should return users by ids")
+    void getByIdsTest() {
+        BDDMockito.when(service.getByIds(List.of(1, 2))).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(controller.getByIds(List.of(1, 2)))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("lookup should return users by ids from body")
+    void lookupTest() {
+        BDDMockito.when(service.getByIds(List.of(1, 2))).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(controller.lookup(List.of(1, 2)))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search should return found users")
+    void searchTest() {
+        BDDMockito.when(service.search("user", true, 0, 50)).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(controller.search("user", true, 0, 50))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getPage should return users and next cursor header")
+    void getPageTest() {
+        BDDMockito.when(service.getPage(0, 1))
+                .thenReturn(Mono.just(new UsersPage(List.of(createdUser()), createdUser().getId())));
+
+        StepVerifier.create(controller.getPage(1, 0))
+                .expectSubscription()
+                .assertNext(response -> {
+                    Assertions.assertEquals(List.of(createdUser()), response.getBody());
+                    Assertions.assertEquals(String.valueOf(createdUser().getId()),
+                            response.getHeaders().getFirst(UsersController.NEXT_CURSOR_HEADER));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getPage should not return next cursor header for the last page")
+    void getLastPageTest() {
+        BDDMockito.when(service.getPage(1, 10))
+                .thenReturn(Mono.just(new UsersPage(List.of(), null)));
+
+        StepVerifier.create(controller.getPage(10, 1))
+                .expectSubscription()
+                .assertNext(response -> {
+                    Assertions.assertEquals(List.of(), response.getBody());
+                    Assertions.assertFalse(response.getHeaders().containsKey(UsersController.NEXT_CURSOR_HEADER));
+                })
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("getById should return a Mono with one user")
     void getByIdTest() {
@@ -94,7 +198,7 @@ class UsersControllerTest {
 
         StepVerifier.create(controller.getById(2))
                 .expectSubscription()
-                .expectError(ResponseStatusException.class)
+                .expectError(UserNotFoundException.class)
                 .verify();
     }
 
@@ -114,7 +218,7 @@ class UsersControllerTest {
     void saveWithIdTest() {
         StepVerifier.create(controller.save(createdUser()))
                 .expectSubscription()
-                .expectError(ResponseStatusException.class)
+                .expectError(InvalidRequestException.class)
                 .verify();
     }
 
@@ -146,10 +250,27 @@ class UsersControllerTest {
 
         StepVerifier.create(controller.update(newUser()))
                 .expectSubscription()
-                .expectError(ResponseStatusException.class)
+                .expectError(InvalidRequestException.class)
                 .verify();
     }
 
+    @Test
+    @DisplayName("acceptsGzip should take weights and wildcard into account")
+    void acceptsGzipTest() {
+        Assertions.assertTrue(UsersController.acceptsGzip("gzip"));
+        Assertions.assertTrue(UsersController.acceptsGzip("deflate, GZIP;q=0.5"));
+        Assertions.assertTrue(UsersController.acceptsGzip("br, *;q=0.1"));
+        Assertions.assertTrue(UsersController.acceptsGzip("x-gzip"));
+
+        Assertions.assertFalse(UsersController.acceptsGzip(null));
+        Assertions.assertFalse(UsersController.acceptsGzip("identity"));
+        Assertions.assertFalse(UsersController.acceptsGzip("gzip;q=0"));
+        Assertions.assertFalse(UsersController.acceptsGzip("gzip; q=0.000, *"));
+        Assertions.assertFalse(UsersController.acceptsGzip("*;q=0"));
+        Assertions.assertFalse(UsersController.acceptsGzip("gzip;q=oops"));
+        Assertions.assertFalse(UsersController.acceptsGzip("gzipped"));
+    }
+
     @Test
     void saveBatchTest() {
         BDDMockito.when(service.save(List.of(newUser(), newUser())))
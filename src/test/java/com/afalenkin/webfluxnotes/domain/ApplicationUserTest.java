@@ -0,0 +1,81 @@
+package com.afalenkin.webfluxnotes.domain;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class ApplicationUserTest {
+
+    @Test
+    @DisplayName("authorities should be parsed from comma separated roles")
+    void getAuthoritiesTest() {
+        ApplicationUser user = new ApplicationUser(1, "God", "god", "root", "ROLE_ADMIN, ROLE_USER");
+
+        Assertions.assertEquals(Set.copyOf(AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER")),
+                user.getAuthorities());
+        Assertions.assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"),
+                List.copyOf(AuthorityUtils.authorityListToSet(user.getAuthorities())));
+    }
+
+    @Test
+    @DisplayName("authorities should be parsed once and be immutable")
+    void getAuthoritiesImmutableTest() {
+        ApplicationUser user = new ApplicationUser(1, "God", "god", "root", "ROLE_ADMIN,ROLE_USER");
+
+        Set<GrantedAuthority> authorities = user.getAuthorities();
+
+        Assertions.assertSame(authorities, user.getAuthorities());
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> authorities.add(new SimpleGrantedAuthority("ROLE_ROOT")));
+    }
+
+    @Test
+    @DisplayName("users with the same roles should share authorities")
+    void sharedAuthoritiesTest() {
+        ApplicationUser god = new ApplicationUser(1, "God", "god", "root", "ROLE_ADMIN,ROLE_USER");
+        ApplicationUser admin = new ApplicationUser(2, "Admin", "admin", "root", new String("ROLE_ADMIN,ROLE_USER"));
+        ApplicationUser dog = new ApplicationUser(3, "Dog", "dog", "root", "ROLE_USER");
+
+        Assertions.assertSame(god.getAuthorities(), admin.getAuthorities());
+        Assertions.assertSame(dog.getAuthorities().iterator().next(),
+                List.copyOf(god.getAuthorities()).get(1));
+    }
+
+    @Test
+    @DisplayName("changed roles should be parsed again")
+    void setAuthoritiesTest() {
+        ApplicationUser user = new ApplicationUser(1, "Dog", "dog", "root", "ROLE_USER");
+        user.getAuthorities();
+
+        user.setAuthorities("ROLE_ADMIN");
+
+        Assertions.assertEquals(Set.copyOf(AuthorityUtils.createAuthorityList("ROLE_ADMIN")), user.getAuthorities());
+    }
+
+    @Test
+    @DisplayName("parsed authorities should not affect equality")
+    void equalsTest() {
+        ApplicationUser user = new ApplicationUser(1, "Dog", "dog", "root", "ROLE_USER");
+        ApplicationUser same = new ApplicationUser(1, "Dog", "dog", "root", "ROLE_USER");
+        user.getAuthorities();
+
+        Assertions.assertEquals(same, user);
+    }
+
+    @Test
+    @DisplayName("empty roles should give empty authorities")
+    void emptyAuthoritiesTest() {
+        Assertions.assertTrue(new ApplicationUser(1, "Dog", "dog", "root", null).getAuthorities().isEmpty());
+        Assertions.assertTrue(new ApplicationUser(1, "Dog", "dog", "root", " ").getAuthorities().isEmpty());
+    }
+}
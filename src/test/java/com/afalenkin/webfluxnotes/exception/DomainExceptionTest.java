@@ -0,0 +1,35 @@
+package com.afalenkin.webfluxnotes.exception;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class DomainExceptionTest {
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("shared exception should not collect stack trace or suppressed exceptions")
+    void sharedInstanceTest() {
+        for (int i = 0; i < 3; i++) {
+            Mono<Object> missing = Mono.empty()
+                    .switchIfEmpty(Mono.error(UserNotFoundException.INSTANCE))
+                    .checkpoint("getById");
+            Assertions.assertSame(UserNotFoundException.INSTANCE,
+                    Assertions.assertThrows(UserNotFoundException.class, missing::block));
+        }
+
+        Assertions.assertEquals(0, UserNotFoundException.INSTANCE.getStackTrace().length);
+        Assertions.assertEquals(0, UserNotFoundException.INSTANCE.getSuppressed().length);
+    }
+}
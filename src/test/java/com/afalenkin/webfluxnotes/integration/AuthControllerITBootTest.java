@@ -0,0 +1,181 @@
+package com.afalenkin.webfluxnotes.integration;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import com.afalenkin.webfluxnotes.security.AccessToken;
+import com.afalenkin.webfluxnotes.util.WebTestClientUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+
+import static com.afalenkin.webfluxnotes.util.UserData.createdUser;
+
+/**
+ * Получение токена по паролю и доступ к API по токену в полном контексте спринга.
+ * Изменения application_users приходят из БД через PostgresCacheInvalidationBus.
+ */
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "app.users.cache.invalidation.enabled=true")
+@AutoConfigureWebTestClient
+@AutoConfigureMetrics
+class AuthControllerITBootTest {
+
+    private static final String CHANGED_USER = "password-change-test";
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Autowired
+    private WebTestClientUtils testClientUtils;
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @MockBean
+    private UsersRepository repository;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @AfterEach
+    void tearDown() {
+        databaseClient.sql("DELETE FROM application_users WHERE username = :username")
+                .bind("username", CHANGED_USER)
+                .then()
+                .block();
+    }
+
+    @Test
+    @DisplayName("changed password should be rejected before authentication caches expire")
+    void changedPasswordTest() throws InterruptedException {
+        databaseClient.sql("INSERT INTO application_users (name, username, password, authorities) "
+                        + "VALUES ('Changed', :username, '{noop}old', 'ROLE_USER')")
+                .bind("username", CHANGED_USER)
+                .then()
+                .block();
+        issueToken(CHANGED_USER, "old");
+
+        databaseClient.sql("UPDATE application_users SET password = '{noop}new' WHERE username = :username")
+                .bind("username", CHANGED_USER)
+                .then()
+                .block();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (testClientUtils.authenticateClient(CHANGED_USER, "old")
+                .post()
+                .uri("/auth/token")
+                .exchange()
+                .returnResult(Void.class)
+                .getStatus()
+                .is2xxSuccessful()) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "Old password is still accepted");
+            Thread.sleep(50);
+        }
+        issueToken(CHANGED_USER, "new");
+    }
+
+    @Test
+    @DisplayName("token issued by password should give access with user roles")
+    void issueTokenTest() {
+        User user = createdUser();
+        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(user));
+
+        WebTestClient userTokenClient = testClientUtils.tokenClient(issueToken("dog", "root"));
+
+        userTokenClient
+                .get()
+                .uri("/users/{id}", 1)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(User.class)
+                .isEqualTo(user);
+
+        userTokenClient
+                .get()
+                .uri("/users")
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    @DisplayName("invalid token should not be accepted")
+    void invalidTokenTest() {
+        testClientUtils.tokenClient("invalid")
+                .get()
+                .uri("/users/{id}", 1)
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    @DisplayName("token should not be exchanged for a new token")
+    void refreshTokenTest() {
+        testClientUtils.tokenClient(issueToken("god", "root"))
+                .post()
+                .uri("/auth/token")
+                .exchange()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    @DisplayName("token should not be issued for invalid password")
+    void issueTokenInvalidPasswordTest() {
+        testClientUtils.authenticateClient("god", "wrong")
+                .post()
+                .uri("/auth/token")
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    @Test
+    @DisplayName("metrics should be scraped without authentication")
+    void prometheusTest() {
+        issueToken("dog", "root");
+
+        webTestClient
+                .get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .value(body -> Assertions.assertTrue(body.lines().anyMatch(line -> line.matches(
+                        "auth_authentication_seconds_count\\{.*result=\"success\",type=\"password\".*} [1-9].*")), body));
+
+        webTestClient
+                .get()
+                .uri("/actuator/metrics")
+                .exchange()
+                .expectStatus().isUnauthorized();
+    }
+
+    private String issueToken(String username, String password) {
+        return testClientUtils.authenticateClient(username, password)
+                .post()
+                .uri("/auth/token")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(AccessToken.class)
+                .returnResult()
+                .getResponseBody()
+                .getAccessToken();
+    }
+}
@@ -1,5 +1,7 @@
 package com.afalenkin.webfluxnotes.integration;
 
+import com.afalenkin.webfluxnotes.controllers.UsersController;
+import com.afalenkin.webfluxnotes.domain.ImportProgress;
 import com.afalenkin.webfluxnotes.domain.User;
 import com.afalenkin.webfluxnotes.repository.UsersRepository;
 import com.afalenkin.webfluxnotes.util.WebTestClientUtils;
@@ -16,6 +18,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -26,15 +29,21 @@ import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
 
 import static com.afalenkin.webfluxnotes.util.UserData.createdUser;
 import static com.afalenkin.webfluxnotes.util.UserData.newUser;
+import static com.afalenkin.webfluxnotes.util.UserData.updatedUser;
 
 /**
  * Запуск тестов в полном контексте спринга
@@ -152,6 +161,8 @@ class UserControllerITBootTest {
                 .expectStatus().is4xxClientError()
                 .expectBody()
                 .jsonPath("$.status").isEqualTo(400)
+                .jsonPath("$.error").isEqualTo("Bad Request")
+                .jsonPath("$.message").isEqualTo("400 BAD_REQUEST \"Ooops, something went wrong...\"")
                 .jsonPath("$.developer").isEqualTo("Alenkin Andrew");
     }
 
@@ -204,8 +215,7 @@ class UserControllerITBootTest {
     @Test
     @DisplayName("getById should return a empty Mono if user not exists")
     void deleteTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(createdUser()));
-        BDDMockito.when(repository.delete(ArgumentMatchers.any())).thenReturn(Mono.empty());
+        BDDMockito.when(repository.deleteUser(1)).thenReturn(Mono.just(1));
 
         adminClient
                 .delete()
@@ -217,8 +227,7 @@ class UserControllerITBootTest {
     @Test
     @DisplayName("update should update user if it exists")
     void updateTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(createdUser()));
-        BDDMockito.when(repository.save(ArgumentMatchers.any(User.class))).thenReturn(Mono.just(createdUser()));
+        BDDMockito.when(repository.updateName(1, createdUser().getName())).thenReturn(Mono.just(1));
 
         adminClient
                 .put()
@@ -232,7 +241,7 @@ class UserControllerITBootTest {
     @Test
     @DisplayName("update should be failed if id is absent")
     void updateWitNullableIdTest() {
-        BDDMockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
+        BDDMockito.verify(repository, Mockito.never()).updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.any());
 
         adminClient
                 .put()
@@ -246,7 +255,7 @@ class UserControllerITBootTest {
     @Test
     @DisplayName("update should be failed if id is absent")
     void updateInvalidTest() {
-        BDDMockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
+        BDDMockito.verify(repository, Mockito.never()).updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.any());
 
         adminClient
                 .put()
@@ -260,7 +269,8 @@ class UserControllerITBootTest {
     @Test
     void saveBatchTest() {
         User user = createdUser();
-        BDDMockito.when(repository.saveAll(List.of(newUser(), newUser())))
+        BDDMockito.when(repository.insertAll(
+                        ArgumentMatchers.eq(List.of(newUser(), newUser())), ArgumentMatchers.anyInt()))
                 .thenReturn(Flux.just(user, user));
 
         adminClient
@@ -277,19 +287,151 @@ class UserControllerITBootTest {
 
     @Test
     void saveBatchFailedTest() {
-        User user = createdUser();
-        BDDMockito.when(repository.saveAll(List.of(newUser(), newUser())))
-                .thenReturn(Flux.just(user, user.withName("")));
-
         adminClient
                 .post()
                 .uri("/users/batch")
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(List.of(newUser(), newUser())))
+                .body(BodyInserters.fromValue(List.of(newUser(), newUser().withName(""))))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        BDDMockito.verify(repository, Mockito.never()).insertAll(ArgumentMatchers.any(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("import should read users from NDJSON and report progress")
+    void importUsersTest() {
+        BDDMockito.when(repository.insertAll(ArgumentMatchers.anyList(), ArgumentMatchers.anyInt()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<User>>getArgument(0)));
+
+        adminClient
+                .post()
+                .uri("/users/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"first\"}\n{\"name\":\"\"}\n{\"name\":\"second\"}\n")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ImportProgress.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(new ImportProgress(2, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("import should be forbidden for user")
+    void importUsersForbiddenTest() {
+        userClient
+                .post()
+                .uri("/users/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"name\":\"first\"}\n")
                 .exchange()
-                .expectStatus().isBadRequest()
+                .expectStatus().isForbidden();
+    }
+
+    @Test
+    @DisplayName("export should write users as CSV")
+    void exportUsersTest() {
+        BDDMockito.when(repository.streamAll(ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(createdUser(), updatedUser().withId(2)));
+
+        adminClient
+                .get()
+                .uri("/users/export")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(UsersController.CSV_VALUE)
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody(String.class)
+                .isEqualTo("id,name\n1,NewUser\n2,UpdatedUser\n");
+    }
+
+    @Test
+    @DisplayName("export should not be compressed if client refuses gzip")
+    void exportUsersGzipRefusedTest() {
+        BDDMockito.when(repository.streamAll(ArgumentMatchers.anyInt())).thenReturn(Flux.just(createdUser()));
+
+        adminClient
+                .get()
+                .uri("/users/export")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.CONTENT_ENCODING)
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody(String.class)
+                .isEqualTo("id,name\n1,NewUser\n");
+    }
+
+    @Test
+    @DisplayName("export should be compressed if client accepts gzip")
+    void exportUsersGzipTest() throws IOException {
+        BDDMockito.when(repository.streamAll(ArgumentMatchers.anyInt())).thenReturn(Flux.just(createdUser()));
+
+        byte[] body = adminClient
+                .get()
+                .uri("/users/export")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            Assertions.assertEquals("id,name\n1,NewUser\n", new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @DisplayName("getByIds should return users for user")
+    void getByIdsTest() {
+        BDDMockito.when(repository.findByIds(ArgumentMatchers.any())).thenReturn(Flux.just(createdUser()));
+
+        userClient
+                .get()
+                .uri("/users?ids={ids}", "1,2")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class)
+                .hasSize(1)
+                .contains(createdUser());
+    }
+
+    @Test
+    @DisplayName("search should return users found by name prefix for user")
+    void searchTest() {
+        BDDMockito.when(repository.findByNamePrefix("user", "uses", 0, 50)).thenReturn(Flux.just(createdUser()));
+
+        userClient
+                .get()
+                .uri("/users/search?q={q}&prefix=true", "User")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(User.class)
+                .hasSize(1)
+                .contains(createdUser());
+    }
+
+    @Test
+    @DisplayName("lookup should be allowed for user")
+    void lookupTest() {
+        BDDMockito.when(repository.findByIds(ArgumentMatchers.any())).thenReturn(Flux.just(createdUser()));
+
+        userClient
+                .post()
+                .uri("/users/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(1, 2))
+                .exchange()
+                .expectStatus().isOk()
                 .expectBodyList(User.class)
-                .hasSize(1);
+                .hasSize(1)
+                .contains(createdUser());
     }
 
 }
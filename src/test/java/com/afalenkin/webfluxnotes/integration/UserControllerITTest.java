@@ -1,9 +1,18 @@
 package com.afalenkin.webfluxnotes.integration;
 
+import com.afalenkin.webfluxnotes.cache.LocalCacheInvalidationBus;
+import com.afalenkin.webfluxnotes.cache.NoOpUserCache;
+import com.afalenkin.webfluxnotes.config.ReplicasProperties;
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.controllers.UsersController;
 import com.afalenkin.webfluxnotes.domain.User;
 import com.afalenkin.webfluxnotes.exception.CustomAttributes;
+import com.afalenkin.webfluxnotes.repository.UsersBulkLoader;
 import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import com.afalenkin.webfluxnotes.routing.ReadYourWrites;
+import com.afalenkin.webfluxnotes.service.DirectUserLoader;
 import com.afalenkin.webfluxnotes.service.UserService;
+import com.afalenkin.webfluxnotes.service.UsersCsvWriter;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
@@ -15,6 +24,7 @@ import org.mockito.BDDMockito;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
@@ -27,6 +37,7 @@ import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -46,14 +57,18 @@ import static com.afalenkin.webfluxnotes.util.UserData.newUser;
  * При этом не происходит сканирование пакетов, нужные для теста классы нужно импортировать.
  */
 @ExtendWith(SpringExtension.class)
-@WebFluxTest
-@Import({UserService.class,
-        CustomAttributes.class})
+@WebFluxTest(UsersController.class)
+@Import({UserService.class, DirectUserLoader.class, UsersCsvWriter.class, NoOpUserCache.class, LocalCacheInvalidationBus.class,
+        ReadYourWrites.class, CustomAttributes.class})
+@EnableConfigurationProperties({UsersProperties.class, ReplicasProperties.class})
 class UserControllerITTest {
 
     @MockBean
     private UsersRepository repository;
 
+    @MockBean
+    private UsersBulkLoader bulkLoader;
+
     @Autowired
     private WebTestClient testClient;
 
@@ -112,6 +127,45 @@ class UserControllerITTest {
                 .contains(user);
     }
 
+    @Test
+    @DisplayName("getAll should stream users as NDJSON")
+    @WithMockUser(roles = "ADMIN")
+    void streamAllTest() {
+        User user = createdUser();
+        BDDMockito.when(repository.streamAll(ArgumentMatchers.anyInt())).thenReturn(Flux.just(user, user));
+
+        testClient
+                .get()
+                .uri("/users")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(User.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(user, user)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getPage should return users and next cursor header")
+    @WithMockUser(roles = "ADMIN")
+    void getPageTest() {
+        User user = createdUser();
+        BDDMockito.when(repository.findPage(0, 2)).thenReturn(Flux.just(user, user.withId(2)));
+
+        testClient
+                .get()
+                .uri("/users?limit={limit}", 1)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(UsersController.NEXT_CURSOR_HEADER, String.valueOf(user.getId()))
+                .expectBodyList(User.class)
+                .hasSize(1)
+                .contains(user);
+    }
+
     @Test
     @DisplayName("getById should return a Mono with one user")
     @WithMockUser()
@@ -200,8 +254,7 @@ class UserControllerITTest {
     @DisplayName("getById should return a empty Mono if user not exists")
     @WithMockUser()
     void deleteTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(createdUser()));
-        BDDMockito.when(repository.delete(ArgumentMatchers.any())).thenReturn(Mono.empty());
+        BDDMockito.when(repository.deleteUser(1)).thenReturn(Mono.just(1));
 
         testClient
                 .delete()
@@ -215,8 +268,7 @@ class UserControllerITTest {
     @DisplayName("update should update user if it exists")
     @WithMockUser()
     void updateTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(createdUser()));
-        BDDMockito.when(repository.save(ArgumentMatchers.any(User.class))).thenReturn(Mono.just(createdUser()));
+        BDDMockito.when(repository.updateName(1, createdUser().getName())).thenReturn(Mono.just(1));
 
         testClient
                 .put()
@@ -232,7 +284,7 @@ class UserControllerITTest {
     @DisplayName("update should be failed if id is absent")
     @WithMockUser()
     void updateWitNullableIdTest() {
-        BDDMockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
+        BDDMockito.verify(repository, Mockito.never()).updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.any());
 
         testClient
                 .put()
@@ -248,7 +300,7 @@ class UserControllerITTest {
     @DisplayName("update should be failed if id is absent")
     @WithMockUser(authorities = "ROLE_ADMIN")
     void updateInvalidTest() {
-        BDDMockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
+        BDDMockito.verify(repository, Mockito.never()).updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.any());
 
         testClient
                 .put()
@@ -264,7 +316,8 @@ class UserControllerITTest {
     @WithMockUser()
     void saveBatchTest() {
         User user = createdUser();
-        BDDMockito.when(repository.saveAll(List.of(newUser(), newUser())))
+        BDDMockito.when(repository.insertAll(
+                        ArgumentMatchers.eq(List.of(newUser(), newUser())), ArgumentMatchers.anyInt()))
                 .thenReturn(Flux.just(user, user));
 
         testClient
@@ -283,19 +336,15 @@ class UserControllerITTest {
     @Test
     @WithMockUser()
     void saveBatchFailedTest() {
-        User user = createdUser();
-        BDDMockito.when(repository.saveAll(List.of(newUser(), newUser())))
-                .thenReturn(Flux.just(user, user.withName("")));
-
         testClient
                 .post()
                 .uri("/users/batch")
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(List.of(newUser(), newUser())))
+                .body(BodyInserters.fromValue(List.of(newUser(), newUser().withName(""))))
                 .exchange()
-                .expectStatus().isBadRequest()
-                .expectBodyList(User.class)
-                .hasSize(1);
+                .expectStatus().isBadRequest();
+
+        BDDMockito.verify(repository, Mockito.never()).insertAll(ArgumentMatchers.any(), ArgumentMatchers.anyInt());
     }
 
 }
@@ -0,0 +1,107 @@
+package com.afalenkin.webfluxnotes.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Задержки одной фазы теста по операциям. Записывать можно из любых потоков: ответы приходят в потоках netty.
+ * <p>
+ * Задержка отсчитывается от момента, когда запрос должен был быть отправлен по расписанию, а не когда он
+ * фактически ушел. Если генератор или приложение отстают, ожидание в очереди тоже попадает в задержку -
+ * иначе медленные ответы уменьшали бы число запросов в измерении и прятали бы сами себя (coordinated omission).
+ */
+class LatencyRecorder {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<LoadScenario.Operation, Stats> operations = new EnumMap<>(LoadScenario.Operation.class);
+
+    LatencyRecorder() {
+        for (LoadScenario.Operation operation : LoadScenario.Operation.values()) {
+            operations.put(operation, new Stats());
+        }
+    }
+
+    void success(LoadScenario.Operation operation, long intendedStartNanos) {
+        operations.get(operation).record(System.nanoTime() - intendedStartNanos);
+    }
+
+    /**
+     * Ошибочный ответ тоже учитывается в задержках: клиент ждал его столько же
+     */
+    void failure(LoadScenario.Operation operation, long intendedStartNanos) {
+        Stats stats = operations.get(operation);
+        stats.record(System.nanoTime() - intendedStartNanos);
+        stats.errors.increment();
+    }
+
+    /**
+     * Запрос не был отправлен, потому что ответа ждет слишком много запросов
+     */
+    void dropped(LoadScenario.Operation operation) {
+        operations.get(operation).dropped.increment();
+    }
+
+    LatencyReport report(Duration elapsed) {
+        Map<String, LatencyReport.Row> rows = new LinkedHashMap<>();
+        Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+        long totalErrors = 0;
+        long totalDropped = 0;
+        for (Map.Entry<LoadScenario.Operation, Stats> entry : operations.entrySet()) {
+            Stats stats = entry.getValue();
+            long errors = stats.errors.sum();
+            long dropped = stats.dropped.sum();
+            if (stats.histogram.getTotalCount() == 0 && dropped == 0) {
+                continue;
+            }
+            String name = LoadScenario.label(entry.getKey());
+            rows.put(name, row(name, stats.histogram, errors, dropped, elapsed));
+            total.add(stats.histogram);
+            totalErrors += errors;
+            totalDropped += dropped;
+        }
+        rows.put(LatencyReport.TOTAL, row(LatencyReport.TOTAL, total, totalErrors, totalDropped, elapsed));
+        return new LatencyReport(rows);
+    }
+
+    private static LatencyReport.Row row(String name, Histogram histogram, long errors, long dropped,
+                                         Duration elapsed) {
+        double seconds = elapsed.toNanos() / (double) TimeUnit.SECONDS.toNanos(1);
+        return new LatencyReport.Row(name,
+                histogram.getTotalCount() + dropped,
+                errors + dropped,
+                (histogram.getTotalCount() - errors) / seconds,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static class Stats {
+
+        /**
+         * Значения в микросекундах, диапазон растет автоматически
+         */
+        private final ConcurrentHistogram histogram = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+
+        private void record(long nanos) {
+            histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+        }
+    }
+}
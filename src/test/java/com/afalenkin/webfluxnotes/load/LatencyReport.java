@@ -0,0 +1,139 @@
+package com.afalenkin.webfluxnotes.load;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Итог фазы измерения: задержки и пропускная способность по операциям и по всем операциям вместе.
+ * Отчет проверяется на допустимые значения и на ухудшение относительно отчета предыдущего запуска.
+ */
+class LatencyReport {
+
+    static final String TOTAL = "total";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private static final TypeReference<Map<String, Row>> ROWS = new TypeReference<>() {
+    };
+
+    private final Map<String, Row> rows;
+
+    LatencyReport(Map<String, Row> rows) {
+        this.rows = rows;
+    }
+
+    Row total() {
+        return rows.get(TOTAL);
+    }
+
+    void print(PrintStream out) {
+        out.printf(Locale.ROOT, "%-12s %9s %7s %10s %9s %9s %9s %9s%n",
+                "operation", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        rows.values().forEach(row -> out.printf(Locale.ROOT, "%-12s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f%n",
+                row.getName(), row.getRequests(), row.getErrors(), row.getThroughput(),
+                row.getP50(), row.getP99(), row.getP999(), row.getMax()));
+    }
+
+    void write(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        MAPPER.writeValue(path.toFile(), rows);
+    }
+
+    static LatencyReport read(Path path) throws IOException {
+        return new LatencyReport(MAPPER.readValue(path.toFile(), ROWS));
+    }
+
+    /**
+     * Допустимые значения проверяются для всех операций вместе: у чтения и записи разные задержки,
+     * и общий предел для каждой операции был бы либо слишком строгим для записи, либо слишком мягким для чтения.
+     */
+    List<String> violations(LoadProperties.Limits limits) {
+        List<String> violations = new ArrayList<>();
+        Row total = total();
+        exceeds(violations, "p50", total.getP50(), limits.getP50());
+        exceeds(violations, "p99", total.getP99(), limits.getP99());
+        exceeds(violations, "p99.9", total.getP999(), limits.getP999());
+        double errorRate = total.getRequests() == 0 ? 0 : total.getErrors() / (double) total.getRequests();
+        if (errorRate > limits.getErrorRate()) {
+            violations.add(String.format(Locale.ROOT, "%s: error rate %.4f is above %.4f",
+                    TOTAL, errorRate, limits.getErrorRate()));
+        }
+        return violations;
+    }
+
+    /**
+     * С предыдущим запуском сравнивается каждая операция, которая есть в обоих отчетах:
+     * задержки не должны вырасти, а пропускная способность - упасть больше чем на tolerance.
+     */
+    List<String> regressions(LatencyReport baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        rows.forEach((name, row) -> {
+            Row previous = baseline.rows.get(name);
+            if (previous == null) {
+                return;
+            }
+            slower(regressions, name, "p50", row, previous, Row::getP50, tolerance);
+            slower(regressions, name, "p99", row, previous, Row::getP99, tolerance);
+            slower(regressions, name, "p99.9", row, previous, Row::getP999, tolerance);
+            if (row.getThroughput() < previous.getThroughput() * (1 - tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: throughput %.1f req/s is below baseline %.1f req/s",
+                        name, row.getThroughput(), previous.getThroughput()));
+            }
+        });
+        return regressions;
+    }
+
+    private static void exceeds(List<String> violations, String percentile, double millis, Duration limit) {
+        if (limit != null && millis > limit.toNanos() / 1_000_000.0) {
+            violations.add(String.format(Locale.ROOT, "%s: %s %.2f ms is above %d ms",
+                    TOTAL, percentile, millis, limit.toMillis()));
+        }
+    }
+
+    private static void slower(List<String> regressions, String name, String percentile, Row row, Row previous,
+                               ToDoubleFunction<Row> latency, double tolerance) {
+        double current = latency.applyAsDouble(row);
+        double expected = latency.applyAsDouble(previous);
+        if (current > expected * (1 + tolerance)) {
+            regressions.add(String.format(Locale.ROOT, "%s: %s %.2f ms is above baseline %.2f ms",
+                    name, percentile, current, expected));
+        }
+    }
+
+    /**
+     * Строка отчета. Задержки в миллисекундах, пропускная способность - успешные ответы в секунду.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Row {
+
+        private String name;
+        private long requests;
+        private long errors;
+        private double throughput;
+        private double p50;
+        private double p99;
+        private double p999;
+        private double max;
+    }
+}
@@ -0,0 +1,83 @@
+package com.afalenkin.webfluxnotes.load;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.blockhound.BlockHound;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class LatencyReportTest {
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("violations should report total percentiles and error rate above limits")
+    void violationsTest() {
+        LatencyReport report = report(
+                row("get-by-id", 1000, 0, 100, 2, 20, 40),
+                row(LatencyReport.TOTAL, 1000, 20, 100, 2, 20, 40));
+
+        LoadProperties.Limits limits = new LoadProperties.Limits();
+        limits.setP50(Duration.ofMillis(5));
+        limits.setP99(Duration.ofMillis(10));
+        limits.setErrorRate(0.01);
+
+        Assertions.assertThat(report.violations(limits))
+                .containsExactly("total: p99 20.00 ms is above 10 ms", "total: error rate 0.0200 is above 0.0100");
+    }
+
+    @Test
+    @DisplayName("regressions should compare operations present in both reports with tolerance")
+    void regressionsTest() {
+        LatencyReport baseline = report(
+                row("get-by-id", 1000, 0, 100, 2, 10, 20),
+                row("save", 100, 0, 10, 5, 50, 80),
+                row(LatencyReport.TOTAL, 1100, 0, 110, 2, 20, 60));
+        LatencyReport current = report(
+                row("get-by-id", 1000, 0, 100, 2.2, 15, 20),
+                row("search", 100, 0, 10, 50, 500, 800),
+                row(LatencyReport.TOTAL, 1100, 0, 80, 2, 20, 60));
+
+        Assertions.assertThat(current.regressions(baseline, 0.2))
+                .containsExactly("get-by-id: p99 15.00 ms is above baseline 10.00 ms",
+                        "total: throughput 80.0 req/s is below baseline 110.0 req/s");
+    }
+
+    @Test
+    @DisplayName("bind should override defaults from command line arguments")
+    void bindTest() {
+        LoadProperties properties = LoadTest.bind(new String[]{
+                "--load.rate=500", "--load.duration=1m", "--load.mix.batch-save=0", "--load.limits.p99=50ms"});
+
+        Assertions.assertThat(properties.getRate()).isEqualTo(500);
+        Assertions.assertThat(properties.getDuration()).isEqualTo(Duration.ofMinutes(1));
+        Assertions.assertThat(properties.getMix())
+                .containsEntry(LoadScenario.Operation.BATCH_SAVE, 0)
+                .containsEntry(LoadScenario.Operation.GET_BY_ID, 50);
+        Assertions.assertThat(properties.getLimits().getP99()).isEqualTo(Duration.ofMillis(50));
+    }
+
+    private static LatencyReport report(LatencyReport.Row... rows) {
+        Map<String, LatencyReport.Row> map = new LinkedHashMap<>();
+        for (LatencyReport.Row row : rows) {
+            map.put(row.getName(), row);
+        }
+        return new LatencyReport(map);
+    }
+
+    private static LatencyReport.Row row(String name, long requests, long errors, double throughput,
+                                         double p50, double p99, double p999) {
+        return new LatencyReport.Row(name, requests, errors, throughput, p50, p99, p999, p999);
+    }
+}
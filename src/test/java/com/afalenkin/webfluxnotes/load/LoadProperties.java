@@ -0,0 +1,158 @@
+package com.afalenkin.webfluxnotes.load;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Настройки нагрузочного теста, задаются аргументами запуска с префиксом load, например --load.rate=500
+ */
+@Data
+class LoadProperties {
+
+    /**
+     * Адрес запущенного приложения. Если не задан - приложение запускается в том же процессе на свободном порту.
+     */
+    private String url;
+
+    /**
+     * Профили Spring для приложения, запущенного в том же процессе
+     */
+    private List<String> profiles = new ArrayList<>();
+
+    /**
+     * Дополнительные аргументы для приложения, запущенного в том же процессе.
+     * Тестовый application.yml стоит в classpath раньше основного, поэтому основной указывается явно
+     * (тест запускается из каталога проекта). То же с logback-test.xml: приложение пишет логи и журнал запросов
+     * асинхронно, как в обычном запуске.
+     */
+    private List<String> appArgs = new ArrayList<>(List.of(
+            "--spring.config.location=file:src/main/resources/application.yml",
+            "--logging.config=classpath:logback-spring.xml"));
+
+    /**
+     * Сколько запросов в секунду отправляется независимо от того, успевает ли приложение их обработать
+     */
+    private int rate = 200;
+
+    /**
+     * Прогрев перед измерением, его результаты не учитываются
+     */
+    private Duration warmup = Duration.ofSeconds(10);
+
+    /**
+     * Длительность измерения
+     */
+    private Duration duration = Duration.ofSeconds(30);
+
+    /**
+     * Сколько запросов может ожидать ответа одновременно. Запросы сверх этого не отправляются и считаются ошибками,
+     * чтобы зависшее приложение не копило очередь в генераторе нагрузки.
+     */
+    private int maxInFlight = 1000;
+
+    /**
+     * Ответ, не полученный за это время, считается ошибкой
+     */
+    private Duration requestTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Сколько пользователей создается перед тестом. Чтение и изменение идут только по ним.
+     */
+    private int seed = 1000;
+
+    /**
+     * Сколько пользователей в одном запросе POST /users/batch
+     */
+    private int batchSize = 20;
+
+    /**
+     * Сколько пользователей в одном запросе GET /users?ids=... и GET /users?limit=...
+     */
+    private int readSize = 20;
+
+    private Auth auth = Auth.TOKEN;
+    private Credentials user = new Credentials("dog", "root");
+    private Credentials admin = new Credentials("god", "root");
+
+    /**
+     * Доля каждой операции в нагрузке (веса, не обязательно в сумме 100)
+     */
+    private Map<LoadScenario.Operation, Integer> mix = defaultMix();
+
+    private Limits limits = new Limits();
+
+    /**
+     * Отчет предыдущего запуска. Если задан - задержки и пропускная способность сравниваются с ним.
+     */
+    private String baseline;
+
+    /**
+     * На сколько результаты могут быть хуже отчета предыдущего запуска: 0.2 - на 20%
+     */
+    private double tolerance = 0.2;
+
+    /**
+     * Куда записывается отчет в JSON. Его можно сохранить и передать следующему запуску как baseline.
+     */
+    private String report = "target/load-report.json";
+
+    enum Auth {
+
+        /**
+         * Токен выдается один раз перед каждой фазой, запросы идут с заголовком Bearer
+         */
+        TOKEN,
+
+        /**
+         * Каждый запрос идет с логином и паролем
+         */
+        BASIC
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Credentials {
+
+        private String username;
+        private String password;
+    }
+
+    /**
+     * Допустимые значения для всех операций вместе. Незаданные значения не проверяются.
+     */
+    @Data
+    static class Limits {
+
+        private Duration p50;
+        private Duration p99;
+        private Duration p999;
+
+        /**
+         * Допустимая доля ошибок и неотправленных запросов
+         */
+        private double errorRate = 0.01;
+    }
+
+    private static Map<LoadScenario.Operation, Integer> defaultMix() {
+        Map<LoadScenario.Operation, Integer> mix = new EnumMap<>(LoadScenario.Operation.class);
+        mix.put(LoadScenario.Operation.GET_BY_ID, 50);
+        mix.put(LoadScenario.Operation.GET_BY_IDS, 10);
+        mix.put(LoadScenario.Operation.SEARCH, 10);
+        mix.put(LoadScenario.Operation.GET_PAGE, 10);
+        mix.put(LoadScenario.Operation.SAVE, 10);
+        mix.put(LoadScenario.Operation.UPDATE, 5);
+        mix.put(LoadScenario.Operation.BATCH_SAVE, 5);
+        return mix;
+    }
+}
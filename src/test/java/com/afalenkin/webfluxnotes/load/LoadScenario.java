@@ -0,0 +1,208 @@
+package com.afalenkin.webfluxnotes.load;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.security.AccessToken;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Запросы к API пользователей, из которых состоит нагрузка. Каждая операция выполняется от имени роли,
+ * которой она разрешена в SecurityConfig: чтение - от USER, запись и постраничное чтение - от ADMIN.
+ * <p>
+ * Перед тестом создаются свои пользователи, и чтение и изменение идут только по ним,
+ * чтобы тест не переименовывал пользователей, которые уже были в БД.
+ */
+class LoadScenario {
+
+    @Getter
+    @RequiredArgsConstructor
+    enum Operation {
+        GET_BY_ID(false),
+        GET_BY_IDS(false),
+        SEARCH(false),
+        GET_PAGE(true),
+        SAVE(true),
+        UPDATE(true),
+        BATCH_SAVE(true);
+
+        private final boolean admin;
+    }
+
+    private static final String NAME_PREFIX = "load-user-";
+
+    private final WebClient client;
+    private final LoadProperties properties;
+    private final Operation[] weighted;
+
+    private int[] ids;
+    private String userAuthorization;
+    private String adminAuthorization;
+
+    LoadScenario(WebClient client, LoadProperties properties) {
+        this.client = client;
+        this.properties = properties;
+        this.weighted = weighted(properties.getMix());
+    }
+
+    /**
+     * Создает пользователей, по которым идет нагрузка
+     */
+    Mono<Void> seed() {
+        return authorize()
+                .then(Mono.defer(() -> client.post()
+                        .uri("/users/batch")
+                        .header(HttpHeaders.AUTHORIZATION, adminAuthorization)
+                        .bodyValue(newUsers(properties.getSeed()))
+                        .retrieve()
+                        .bodyToFlux(User.class)
+                        .map(User::getId)
+                        .collectList()))
+                .doOnNext(created -> ids = created.stream().mapToInt(Integer::intValue).toArray())
+                .then();
+    }
+
+    /**
+     * Получает заголовки Authorization для USER и ADMIN. Для токенов вызывается перед каждой фазой,
+     * чтобы токен не истек во время измерения.
+     */
+    Mono<Void> authorize() {
+        return authorization(properties.getUser())
+                .doOnNext(authorization -> userAuthorization = authorization)
+                .then(authorization(properties.getAdmin()))
+                .doOnNext(authorization -> adminAuthorization = authorization)
+                .then();
+    }
+
+    /**
+     * Следующая операция в соответствии с весами
+     */
+    Operation next(SplittableRandom random) {
+        return weighted[random.nextInt(weighted.length)];
+    }
+
+    /**
+     * Запрос собирается сразу, а отправляется при подписке. Результат - статус ответа, тело ответа вычитывается.
+     */
+    Mono<HttpStatus> request(Operation operation, SplittableRandom random) {
+        String authorization = operation.isAdmin() ? adminAuthorization : userAuthorization;
+        switch (operation) {
+            case GET_BY_ID:
+                return exchange(client.get()
+                        .uri("/users/{id}", randomId(random))
+                        .header(HttpHeaders.AUTHORIZATION, authorization));
+            case GET_BY_IDS:
+                return exchange(client.get()
+                        .uri(builder -> builder.path("/users").queryParam("ids", randomIds(random)).build())
+                        .header(HttpHeaders.AUTHORIZATION, authorization));
+            case SEARCH:
+                return exchange(client.get()
+                        .uri("/users/search?q={q}&prefix=true&limit={limit}",
+                                NAME_PREFIX + randomId(random) % 100, properties.getReadSize())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, authorization));
+            case GET_PAGE:
+                return exchange(client.get()
+                        .uri("/users?after={after}&limit={limit}", randomId(random), properties.getReadSize())
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, authorization));
+            case SAVE:
+                return exchange(client.post()
+                        .uri("/users")
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .bodyValue(newUser(random.nextInt(Integer.MAX_VALUE))));
+            case UPDATE:
+                int id = randomId(random);
+                return exchange(client.put()
+                        .uri("/users")
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .bodyValue(new User(id, NAME_PREFIX + id)));
+            case BATCH_SAVE:
+                return exchange(client.post()
+                        .uri("/users/batch")
+                        .header(HttpHeaders.AUTHORIZATION, authorization)
+                        .bodyValue(newUsers(properties.getBatchSize())));
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private Mono<HttpStatus> exchange(WebClient.RequestHeadersSpec<?> request) {
+        return request.exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                .timeout(properties.getRequestTimeout());
+    }
+
+    private Mono<String> authorization(LoadProperties.Credentials credentials) {
+        String basic = "Basic " + Base64.getEncoder().encodeToString(
+                (credentials.getUsername() + ":" + credentials.getPassword()).getBytes(StandardCharsets.UTF_8));
+        if (properties.getAuth() == LoadProperties.Auth.BASIC) {
+            return Mono.just(basic);
+        }
+        return client.post()
+                .uri("/auth/token")
+                .header(HttpHeaders.AUTHORIZATION, basic)
+                .exchangeToMono(response -> response.statusCode().is2xxSuccessful()
+                        ? response.bodyToMono(AccessToken.class)
+                        : failure(response, credentials))
+                .map(token -> token.getTokenType() + " " + token.getAccessToken());
+    }
+
+    private static Mono<AccessToken> failure(ClientResponse response, LoadProperties.Credentials credentials) {
+        return response.releaseBody().then(Mono.error(() -> new IllegalStateException(String.format(
+                "Token for %s was not issued: %s", credentials.getUsername(), response.statusCode()))));
+    }
+
+    private int randomId(SplittableRandom random) {
+        return ids[random.nextInt(ids.length)];
+    }
+
+    private String randomIds(SplittableRandom random) {
+        return IntStream.range(0, properties.getReadSize())
+                .mapToObj(i -> String.valueOf(randomId(random)))
+                .collect(Collectors.joining(","));
+    }
+
+    private static List<User> newUsers(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(LoadScenario::newUser)
+                .collect(Collectors.toList());
+    }
+
+    private static User newUser(int number) {
+        return new User(null, NAME_PREFIX + number);
+    }
+
+    /**
+     * Массив, в котором каждая операция встречается столько раз, каков ее вес: выбор операции - один случайный индекс
+     */
+    private static Operation[] weighted(Map<Operation, Integer> mix) {
+        Operation[] weighted = mix.entrySet().stream()
+                .flatMap(entry -> IntStream.range(0, entry.getValue()).mapToObj(i -> entry.getKey()))
+                .toArray(Operation[]::new);
+        if (weighted.length == 0) {
+            throw new IllegalArgumentException("At least one operation should have positive weight");
+        }
+        return weighted;
+    }
+
+    static String label(Operation operation) {
+        return operation.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
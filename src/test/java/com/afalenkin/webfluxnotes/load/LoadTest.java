@@ -0,0 +1,184 @@
+package com.afalenkin.webfluxnotes.load;
+
+import com.afalenkin.webfluxnotes.WebfluxNotesApplication;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.StringUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ * <p>
+ * Нагрузочный тест API пользователей: mvn -Pload verify (настройки - {@link LoadProperties}), например
+ * <pre>
+ * mvn -Pload verify -Dload.rate=500 -Dload.args="--load.limits.p99=50ms --load.baseline=benchmarks/load-1.0.0.json"
+ * </pre>
+ * Нагрузка открытая: запросы отправляются по расписанию с заданной частотой, не дожидаясь предыдущих ответов,
+ * как приходят запросы от независимых клиентов. Если приложение не успевает, растут задержки и число
+ * одновременных запросов, а не снижается частота. Чтение идет от имени USER, запись - от имени ADMIN.
+ * <p>
+ * По умолчанию приложение запускается в том же процессе и работает с БД из application.yml
+ * (локальная БД из docker-compose). Генератор нагрузки при этом делит с приложением процессор,
+ * поэтому результаты сравнимы только между запусками на одной и той же машине.
+ * <p>
+ * Если результаты выходят за допустимые значения или хуже отчета предыдущего запуска,
+ * процесс завершается с кодом 1 и сборка падает.
+ */
+@Slf4j
+public final class LoadTest {
+
+    private static final Duration SEED_TIMEOUT = Duration.ofMinutes(1);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) {
+        LoadProperties properties = bind(args);
+        ConfigurableApplicationContext application = null;
+        int status;
+        try {
+            String url = properties.getUrl();
+            if (!StringUtils.hasText(url)) {
+                application = start(properties);
+                url = "http://localhost:" + application.getEnvironment().getProperty("local.server.port");
+            }
+            status = run(properties, url);
+        } catch (Exception e) {
+            log.error("Load test failed", e);
+            status = 1;
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+        System.exit(status);
+    }
+
+    static LoadProperties bind(String[] args) {
+        return new Binder(ConfigurationPropertySources.from(new SimpleCommandLinePropertySource(args)))
+                .bind("load", Bindable.ofInstance(new LoadProperties()))
+                .orElseGet(LoadProperties::new);
+    }
+
+    /**
+     * Devtools перезапустил бы main в отдельном потоке, и код завершения процесса потерялся бы.
+     * <p>
+     * Класс приложения при инициализации устанавливает BlockHound. Без явной инициализации это происходило бы
+     * при создании прокси конфигурации, под блокировкой загрузчика классов, которая нужна и загружаемому агенту.
+     */
+    private static ConfigurableApplicationContext start(LoadProperties properties) throws ClassNotFoundException {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        Class.forName(WebfluxNotesApplication.class.getName(), true, LoadTest.class.getClassLoader());
+        return new SpringApplicationBuilder(WebfluxNotesApplication.class)
+                .profiles(properties.getProfiles().toArray(String[]::new))
+                .run(Stream.concat(Stream.of("--server.port=0"), properties.getAppArgs().stream())
+                        .toArray(String[]::new));
+    }
+
+    private static int run(LoadProperties properties, String url) throws Exception {
+        ConnectionProvider connections = ConnectionProvider.builder("load")
+                .maxConnections(properties.getMaxInFlight())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try {
+            WebClient client = WebClient.builder()
+                    .baseUrl(url)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                    .build();
+            LoadScenario scenario = new LoadScenario(client, properties);
+
+            log.info("Creating {} users at {}", properties.getSeed(), url);
+            scenario.seed().block(SEED_TIMEOUT);
+
+            log.info("Warming up for {} at {} requests per second", properties.getWarmup(), properties.getRate());
+            scenario.authorize().block(SEED_TIMEOUT);
+            phase(scenario, properties, properties.getWarmup());
+
+            log.info("Measuring for {} at {} requests per second", properties.getDuration(), properties.getRate());
+            scenario.authorize().block(SEED_TIMEOUT);
+            LatencyReport report = phase(scenario, properties, properties.getDuration());
+
+            report.print(System.out);
+            report.write(Path.of(properties.getReport()));
+            return check(report, properties);
+        } finally {
+            connections.dispose();
+        }
+    }
+
+    /**
+     * Запрос номер i должен уйти через i периодов после начала фазы. Поток генератора только отправляет запросы,
+     * ответы обрабатываются в потоках netty. Отставший от расписания генератор отправляет пропущенные запросы сразу,
+     * а задержка каждого считается от запланированного времени.
+     */
+    private static LatencyReport phase(LoadScenario scenario, LoadProperties properties, Duration duration)
+            throws InterruptedException {
+        LatencyRecorder recorder = new LatencyRecorder();
+        AtomicInteger inFlight = new AtomicInteger();
+        SplittableRandom random = new SplittableRandom();
+
+        long period = TimeUnit.SECONDS.toNanos(1) / properties.getRate();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long intended = start; intended - end < 0; intended += period) {
+            long delay = intended - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            LoadScenario.Operation operation = scenario.next(random);
+            if (inFlight.incrementAndGet() > properties.getMaxInFlight()) {
+                inFlight.decrementAndGet();
+                recorder.dropped(operation);
+                continue;
+            }
+            long scheduled = intended;
+            scenario.request(operation, random)
+                    .doFinally(signal -> inFlight.decrementAndGet())
+                    .subscribe(httpStatus -> {
+                                if (httpStatus.is2xxSuccessful()) {
+                                    recorder.success(operation, scheduled);
+                                } else {
+                                    recorder.failure(operation, scheduled);
+                                }
+                            },
+                            error -> recorder.failure(operation, scheduled));
+        }
+
+        // Ответы на последние запросы тоже входят в фазу. Дольше таймаута запроса ждать нечего.
+        long deadline = System.nanoTime() + properties.getRequestTimeout().toNanos() + TimeUnit.SECONDS.toNanos(1);
+        while (inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return recorder.report(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static int check(LatencyReport report, LoadProperties properties) throws Exception {
+        List<String> failures = new ArrayList<>(report.violations(properties.getLimits()));
+        if (StringUtils.hasText(properties.getBaseline())) {
+            failures.addAll(report.regressions(LatencyReport.read(Path.of(properties.getBaseline())),
+                    properties.getTolerance()));
+        }
+        failures.forEach(failure -> log.error("Load test failed: {}", failure));
+        return failures.isEmpty() ? 0 : 1;
+    }
+}
@@ -0,0 +1,117 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class QueryTimingInterceptorTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Queries queries = proxy();
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("query should be timed from subscription, not from method call")
+    void subscriptionTest() {
+        Mono<String> query = queries.one();
+
+        Assertions.assertEquals(0, count("one", "success"));
+        StepVerifier.create(query)
+                .expectNext("one")
+                .verifyComplete();
+        StepVerifier.create(query)
+                .expectNext("one")
+                .verifyComplete();
+        Assertions.assertEquals(2, count("one", "success"));
+    }
+
+    @Test
+    @DisplayName("mono cancelled after its value should be recorded once as success")
+    void monoCancelAfterValueTest() {
+        StepVerifier.create(Flux.from(queries.one()).take(1))
+                .expectNext("one")
+                .verifyComplete();
+        StepVerifier.create(queries.one().flux().next())
+                .expectNext("one")
+                .verifyComplete();
+
+        Assertions.assertEquals(2, count("one", "success"));
+        Assertions.assertEquals(0, count("one", "cancelled"));
+    }
+
+    @Test
+    @DisplayName("flux should be recorded by its termination or cancellation")
+    void fluxTest() {
+        StepVerifier.create(queries.many())
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+        StepVerifier.create(queries.many().take(1))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(queries.failing())
+                .verifyError(IllegalStateException.class);
+
+        Assertions.assertEquals(1, count("many", "success"));
+        Assertions.assertEquals(1, count("many", "cancelled"));
+        Assertions.assertEquals(1, count("failing", "failure"));
+    }
+
+    private long count(String method, String result) {
+        return meterRegistry.find(QueryTimingInterceptor.METRIC)
+                .tag("repository", "Queries")
+                .tag("method", method)
+                .tag("result", result)
+                .timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+
+    private Queries proxy() {
+        ProxyFactory proxyFactory = new ProxyFactory(new Queries() {
+            @Override
+            public Mono<String> one() {
+                return Mono.just("one");
+            }
+
+            @Override
+            public Flux<Integer> many() {
+                return Flux.just(1, 2, 3);
+            }
+
+            @Override
+            public Flux<Integer> failing() {
+                return Flux.error(new IllegalStateException());
+            }
+        });
+        proxyFactory.addInterface(Queries.class);
+        proxyFactory.addAdvice(new QueryTimingInterceptor("Queries", meterRegistry));
+        return (Queries) proxyFactory.getProxy();
+    }
+
+    interface Queries {
+
+        Mono<String> one();
+
+        Flux<Integer> many();
+
+        Flux<Integer> failing();
+    }
+}
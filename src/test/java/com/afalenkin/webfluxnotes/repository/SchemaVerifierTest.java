@@ -0,0 +1,72 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.repository.SchemaVerifier.RequiredIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class SchemaVerifierTest {
+
+    @Test
+    @DisplayName("missing should be empty when all required indexes exist")
+    void allIndexesExistTest() {
+        Set<RequiredIndex> existing = new HashSet<>(SchemaVerifier.REQUIRED_INDEXES);
+        existing.add(new RequiredIndex("users", "name", "hash", false));
+
+        Assertions.assertTrue(SchemaVerifier.missing(existing).isEmpty());
+    }
+
+    @Test
+    @DisplayName("missing should return required indexes that do not exist")
+    void missingIndexTest() {
+        Set<RequiredIndex> existing = new HashSet<>(SchemaVerifier.REQUIRED_INDEXES);
+        RequiredIndex username = new RequiredIndex("application_users", "username", "btree", true);
+        existing.remove(username);
+
+        Assertions.assertEquals(List.of(username), SchemaVerifier.missing(existing));
+    }
+
+    @Test
+    @DisplayName("non-unique index should not satisfy unique requirement")
+    void nonUniqueIndexTest() {
+        RequiredIndex unique = new RequiredIndex("application_users", "username", "btree", true);
+        RequiredIndex plain = new RequiredIndex("application_users", "username", "btree", false);
+
+        Assertions.assertFalse(unique.isSatisfiedBy(Set.of(plain)));
+        Assertions.assertTrue(plain.isSatisfiedBy(Set.of(unique)));
+    }
+
+    @Test
+    @DisplayName("index of another type should not satisfy requirement")
+    void indexMethodTest() {
+        Set<RequiredIndex> existing = new HashSet<>(SchemaVerifier.REQUIRED_INDEXES);
+        RequiredIndex trigram = new RequiredIndex("users", "name", "gin", false);
+        existing.remove(trigram);
+        existing.add(new RequiredIndex("users", "name", "btree", false));
+
+        Assertions.assertEquals(List.of(trigram), SchemaVerifier.missing(existing));
+    }
+
+    @Test
+    @DisplayName("problems should tell missing indexes from invalid ones and name the shard")
+    void problemsTest() {
+        Set<RequiredIndex> valid = new HashSet<>(SchemaVerifier.REQUIRED_INDEXES);
+        RequiredIndex trigram = new RequiredIndex("users", "name", "gin", false);
+        RequiredIndex prefix = new RequiredIndex("users", "lower(name::text)", "btree", false);
+        valid.remove(trigram);
+        valid.remove(prefix);
+
+        Assertions.assertEquals(List.of("shard 2: missing " + trigram, "shard 2: invalid " + prefix),
+                SchemaVerifier.problems(2, valid, Set.of(prefix)));
+        Assertions.assertTrue(SchemaVerifier.problems(0, new HashSet<>(SchemaVerifier.REQUIRED_INDEXES),
+                Set.of(prefix)).isEmpty());
+    }
+}
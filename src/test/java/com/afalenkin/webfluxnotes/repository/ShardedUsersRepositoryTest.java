@@ -0,0 +1,122 @@
+package com.afalenkin.webfluxnotes.repository;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.routing.DataSourceRoutes;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class ShardedUsersRepositoryTest {
+
+    private static final int SHARDS = 3;
+
+    private final UsersRepository delegate = Mockito.mock(UsersRepository.class);
+    private final ShardedUsersRepository repository = new ShardedUsersRepository(delegate, SHARDS);
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("findById should query shard of the id")
+    void findByIdTest() {
+        BDDMockito.when(delegate.findById(ArgumentMatchers.anyInt()))
+                .thenAnswer(invocation -> Mono.deferContextual(context ->
+                        Mono.just(user(invocation.getArgument(0), DataSourceRoutes.currentShard(context)))));
+
+        StepVerifier.create(repository.findById(7))
+                .expectNext(user(7, 1))
+                .verifyComplete();
+        StepVerifier.create(repository.findById(9))
+                .expectNext(user(9, 0))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findPage should merge pages of all shards in id order")
+    void findPageTest() {
+        BDDMockito.when(delegate.findPage(10, 4))
+                .thenAnswer(invocation -> Flux.deferContextual(context ->
+                        Flux.fromIterable(shardUsers(DataSourceRoutes.currentShard(context), 10, 4))));
+
+        StepVerifier.create(repository.findPage(10, 4))
+                .expectNext(user(11, 2), user(12, 0), user(13, 1), user(14, 2))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findByIds should query only shards of the ids")
+    void findByIdsTest() {
+        BDDMockito.when(delegate.findByIds(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> Flux.deferContextual(context -> Flux.fromStream(
+                        Arrays.stream((Integer[]) invocation.getArgument(0))
+                                .sorted()
+                                .map(id -> user(id, DataSourceRoutes.currentShard(context))))));
+
+        StepVerifier.create(repository.findByIds(new Integer[]{7, 3, 4}))
+                .expectNext(user(3, 0), user(4, 1), user(7, 1))
+                .verifyComplete();
+
+        BDDMockito.verify(delegate).findByIds(new Integer[]{3});
+        BDDMockito.verify(delegate).findByIds(new Integer[]{7, 4});
+        BDDMockito.verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    @DisplayName("insertAll should write each batch to the next shard")
+    void insertAllTest() {
+        BDDMockito.when(delegate.insertAll(ArgumentMatchers.anyList(), ArgumentMatchers.anyInt()))
+                .thenAnswer(invocation -> Flux.deferContextual(context ->
+                        Flux.just(user(0, DataSourceRoutes.currentShard(context)))));
+
+        StepVerifier.create(Flux.range(0, SHARDS + 1)
+                        .concatMap(batch -> repository.insertAll(List.of(new User(null, "NewUser")), 500))
+                        .map(User::getName))
+                .expectNext("shard0", "shard1", "shard2", "shard0")
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("count should sum counts of all shards")
+    void countTest() {
+        BDDMockito.when(delegate.count())
+                .thenAnswer(invocation -> Mono.deferContextual(context ->
+                        Mono.just(10L + DataSourceRoutes.currentShard(context))));
+
+        StepVerifier.create(repository.count())
+                .expectNext(33L)
+                .verifyComplete();
+    }
+
+    /**
+     * Первые limit пользователей шарда после after, как их вернула бы БД шарда
+     */
+    private static List<User> shardUsers(int shard, int after, int limit) {
+        return IntStream.iterate(after + 1, id -> id + 1)
+                .filter(id -> ShardedUsersRepository.shardOf(id, SHARDS) == shard)
+                .limit(limit)
+                .mapToObj(id -> user(id, shard))
+                .collect(Collectors.toList());
+    }
+
+    private static User user(int id, int shard) {
+        return new User(id, "shard" + shard);
+    }
+}
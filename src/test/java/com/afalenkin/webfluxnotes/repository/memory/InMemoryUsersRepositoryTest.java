@@ -0,0 +1,110 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import com.afalenkin.webfluxnotes.domain.User;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class InMemoryUsersRepositoryTest {
+
+    private final InMemoryUsersRepository repository = new InMemoryUsersRepository(5);
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("save should assign sequential id to new user and update existing one")
+    void saveTest() {
+        StepVerifier.create(repository.save(new User(null, "new")))
+                .expectNext(new User(6, "new"))
+                .verifyComplete();
+        StepVerifier.create(repository.save(new User(6, "renamed")))
+                .expectNext(new User(6, "renamed"))
+                .verifyComplete();
+        StepVerifier.create(repository.findById(6))
+                .expectNext(new User(6, "renamed"))
+                .verifyComplete();
+        StepVerifier.create(repository.save(new User(100, "missing")))
+                .expectError(TransientDataAccessResourceException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("insertAll should assign one range of ids to concurrent batches")
+    void insertAllConcurrentTest() {
+        List<User> batch = List.of(new User(null, "a"), new User(null, "b"), new User(null, "c"));
+
+        StepVerifier.create(Flux.range(0, 100)
+                        .flatMap(i -> repository.insertAll(batch, 10).collectList().subscribeOn(Schedulers.parallel()))
+                        .filter(users -> users.get(2).getId() - users.get(0).getId() != 2)
+                        .count())
+                .expectNext(0L)
+                .verifyComplete();
+        StepVerifier.create(repository.count())
+                .expectNext(305L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("updateName and deleteUser should return number of changed rows")
+    void updateAndDeleteTest() {
+        StepVerifier.create(repository.updateName(2, "two"))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(repository.updateName(42, "missing"))
+                .expectNext(0)
+                .verifyComplete();
+        StepVerifier.create(repository.deleteUser(3))
+                .expectNext(1)
+                .verifyComplete();
+        StepVerifier.create(repository.deleteUser(3))
+                .expectNext(0)
+                .verifyComplete();
+        StepVerifier.create(repository.findByIds(new Integer[]{4, 2, 3, 42, 2}))
+                .expectNext(new User(2, "two"), new User(4, "user4"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findPage and findAll should return users in id order")
+    void findPageTest() {
+        StepVerifier.create(repository.findPage(2, 2).map(User::getId))
+                .expectNext(3, 4)
+                .verifyComplete();
+        StepVerifier.create(repository.findAll().map(User::getId))
+                .expectNext(1, 2, 3, 4, 5)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("name search should be case insensitive and match SQL range and LIKE semantics")
+    void searchTest() {
+        repository.saveAll(List.of(new User(null, "User_1%"), new User(null, "Userß"))).blockLast();
+
+        StepVerifier.create(repository.findByNamePrefix("user", "uses", 0, 10).map(User::getId))
+                .expectNext(1, 2, 3, 4, 5, 6, 7)
+                .verifyComplete();
+        StepVerifier.create(repository.findByNamePrefix("userß", "userà", 0, 10).map(User::getId))
+                .expectNext(7)
+                .verifyComplete();
+        StepVerifier.create(repository.findByNameContaining("%r\\_1\\%%", 0, 10).map(User::getId))
+                .expectNext(6)
+                .verifyComplete();
+        StepVerifier.create(repository.findByNameContaining("%SER%", 3, 2).map(User::getId))
+                .expectNext(4, 5)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,99 @@
+package com.afalenkin.webfluxnotes.repository.memory;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class IntObjectStoreTest {
+
+    private final IntObjectStore<String> store = new IntObjectStore<>();
+
+    @Test
+    @DisplayName("put, get and remove should work across segments and keep size")
+    void putGetRemoveTest() {
+        int far = 5 * IntObjectStore.SEGMENT_SIZE + 7;
+
+        Assertions.assertThat(store.put(1, "one")).isNull();
+        Assertions.assertThat(store.put(far, "far")).isNull();
+        Assertions.assertThat(store.put(1, "uno")).isEqualTo("one");
+
+        Assertions.assertThat(store.get(1)).isEqualTo("uno");
+        Assertions.assertThat(store.get(far)).isEqualTo("far");
+        Assertions.assertThat(store.get(far + 1)).isNull();
+        Assertions.assertThat(store.get(Integer.MAX_VALUE)).isNull();
+        Assertions.assertThat(store.get(-1)).isNull();
+        Assertions.assertThat(store.size()).isEqualTo(2);
+
+        Assertions.assertThat(store.remove(far)).isEqualTo("far");
+        Assertions.assertThat(store.remove(far)).isNull();
+        Assertions.assertThat(store.size()).isEqualTo(1);
+        Assertions.assertThatThrownBy(() -> store.put(-1, "negative"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("computeIfPresent should update only existing values")
+    void computeIfPresentTest() {
+        store.put(3, "three");
+
+        Assertions.assertThat(store.computeIfPresent(3, String::toUpperCase)).isEqualTo("THREE");
+        Assertions.assertThat(store.computeIfPresent(4, UnaryOperator.identity())).isNull();
+        Assertions.assertThat(store.get(3)).isEqualTo("THREE");
+        Assertions.assertThat(store.get(4)).isNull();
+    }
+
+    @Test
+    @DisplayName("scan should return matching values after key in ascending key order")
+    void scanTest() {
+        int segment = IntObjectStore.SEGMENT_SIZE;
+        store.put(2 * segment, "c");
+        store.put(segment - 1, "b");
+        store.put(1, "a");
+        store.put(2 * segment + 1, "skip");
+        store.put(3 * segment, "d");
+
+        Assertions.assertThat(store.scan(-1, 10, value -> !value.equals("skip"))).containsExactly("a", "b", "c", "d");
+        Assertions.assertThat(store.scan(1, 2, value -> true)).containsExactly("b", "c");
+        Assertions.assertThat(store.scan(3 * segment, 10, value -> true)).isEmpty();
+        Assertions.assertThat(store.scan(0, 0, value -> true)).isEmpty();
+    }
+
+    /**
+     * Писатель переносит значение между первым и последним ключом: сначала пишет новое, потом удаляет старое.
+     * В любой момент в хранилище одно или два значения, а копия без согласования с записью
+     * может пропустить оба - прочитать первый ключ до переноса, а последний после.
+     */
+    @Test
+    @DisplayName("snapshot should never observe a state between concurrent writes")
+    void snapshotConsistencyTest() throws InterruptedException {
+        int first = 0;
+        int last = 4 * IntObjectStore.SEGMENT_SIZE - 1;
+        store.put(first, "token");
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                store.put(last, "token");
+                store.remove(first);
+                store.put(first, "token");
+                store.remove(last);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 2_000; i++) {
+                Assertions.assertThat(store.snapshot()).isNotEmpty();
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.afalenkin.webfluxnotes.routing;
+
+import com.afalenkin.webfluxnotes.config.ReplicasProperties;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class ReplicaRoutingConnectionFactoryTest {
+
+    private final Connection primaryConnection = Mockito.mock(Connection.class);
+    private final Connection firstReplicaConnection = Mockito.mock(Connection.class);
+    private final Connection secondReplicaConnection = Mockito.mock(Connection.class);
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("create should use primary for unmarked queries")
+    void primaryTest() {
+        ReplicaRoutingConnectionFactory routing = routing(Duration.ZERO);
+
+        StepVerifier.create(routing.create())
+                .expectNext(primaryConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create should use replicas in turn for read-only queries")
+    void roundRobinTest() {
+        ReplicaRoutingConnectionFactory routing = routing(Duration.ZERO);
+
+        StepVerifier.create(readOnly(routing).repeat(2))
+                .expectNext(firstReplicaConnection, secondReplicaConnection, firstReplicaConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create should use primary for read-only queries of caller who has just written")
+    void readYourWritesTest() {
+        ReadYourWrites readYourWrites = new ReadYourWrites(properties(Duration.ofMinutes(1)));
+        ReplicaRoutingConnectionFactory routing = routing(readYourWrites);
+
+        StepVerifier.create(readYourWrites.written()
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication("god"))))
+                .verifyComplete();
+
+        StepVerifier.create(readOnly(routing)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication("god"))))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+        StepVerifier.create(readOnly(routing)
+                        .contextWrite(ReactiveSecurityContextHolder.withAuthentication(authentication("dog"))))
+                .expectNext(firstReplicaConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create should use primary for read-only queries of recently written keys")
+    void writtenKeyTest() {
+        ReadYourWrites readYourWrites = new ReadYourWrites(properties(Duration.ofMinutes(1)));
+        ReplicaRoutingConnectionFactory routing = routing(readYourWrites);
+
+        StepVerifier.create(readYourWrites.written(DataSourceRoutes.userKey(1)))
+                .verifyComplete();
+
+        StepVerifier.create(Mono.from(routing.create())
+                        .contextWrite(DataSourceRoutes.readOnly(DataSourceRoutes.userKey(1))))
+                .expectNext(primaryConnection)
+                .verifyComplete();
+        StepVerifier.create(Mono.from(routing.create())
+                        .contextWrite(DataSourceRoutes.readOnly(DataSourceRoutes.userKey(2))))
+                .expectNext(firstReplicaConnection)
+                .verifyComplete();
+    }
+
+    private Mono<Connection> readOnly(ConnectionFactory connectionFactory) {
+        return Mono.<Connection>from(connectionFactory.create())
+                .contextWrite(DataSourceRoutes.readOnly());
+    }
+
+    private ReplicaRoutingConnectionFactory routing(Duration readYourWrites) {
+        return routing(new ReadYourWrites(properties(readYourWrites)));
+    }
+
+    private ReplicaRoutingConnectionFactory routing(ReadYourWrites readYourWrites) {
+        return new ReplicaRoutingConnectionFactory(connectionFactory(primaryConnection),
+                List.of(connectionFactory(firstReplicaConnection), connectionFactory(secondReplicaConnection)),
+                ReplicasProperties.Balancing.ROUND_ROBIN,
+                readYourWrites);
+    }
+
+    private static ConnectionFactory connectionFactory(Connection connection) {
+        ConnectionFactory connectionFactory = Mockito.mock(ConnectionFactory.class);
+        BDDMockito.doReturn(Mono.just(connection)).when(connectionFactory).create();
+        return connectionFactory;
+    }
+
+    private static ReplicasProperties properties(Duration readYourWrites) {
+        ReplicasProperties properties = new ReplicasProperties();
+        properties.setReadYourWrites(readYourWrites);
+        return properties;
+    }
+
+    private static TestingAuthenticationToken authentication(String username) {
+        return new TestingAuthenticationToken(username, "root", "ROLE_USER");
+    }
+}
@@ -0,0 +1,64 @@
+package com.afalenkin.webfluxnotes.routing;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class ShardRoutingConnectionFactoryTest {
+
+    private final Connection firstShardConnection = Mockito.mock(Connection.class);
+    private final Connection secondShardConnection = Mockito.mock(Connection.class);
+
+    private final ShardRoutingConnectionFactory routing = new ShardRoutingConnectionFactory(List.of(
+            connectionFactory(firstShardConnection), connectionFactory(secondShardConnection)));
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @Test
+    @DisplayName("create should use shard 0 for unmarked queries")
+    void defaultShardTest() {
+        StepVerifier.create(routing.create())
+                .expectNext(firstShardConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create should use marked shard")
+    void markedShardTest() {
+        StepVerifier.create(Mono.from(routing.create())
+                        .contextWrite(DataSourceRoutes.shard(1)))
+                .expectNext(secondShardConnection)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("create should fail for unknown shard")
+    void unknownShardTest() {
+        StepVerifier.create(Mono.from(routing.create())
+                        .contextWrite(DataSourceRoutes.shard(2)))
+                .expectError(IllegalStateException.class)
+                .verify();
+    }
+
+    private static ConnectionFactory connectionFactory(Connection connection) {
+        ConnectionFactory connectionFactory = Mockito.mock(ConnectionFactory.class);
+        BDDMockito.doReturn(Mono.just(connection)).when(connectionFactory).create();
+        return connectionFactory;
+    }
+}
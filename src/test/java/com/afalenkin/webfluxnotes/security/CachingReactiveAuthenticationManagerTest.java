@@ -0,0 +1,128 @@
+package com.afalenkin.webfluxnotes.security;
+
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.afalenkin.webfluxnotes.service.ApplicationUserChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+@ExtendWith(SpringExtension.class)
+class CachingReactiveAuthenticationManagerTest {
+
+    @Mock
+    private ReactiveAuthenticationManager delegate;
+
+    private CachingReactiveAuthenticationManager authenticationManager;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        authenticationManager = new CachingReactiveAuthenticationManager(
+                delegate, new AuthProperties.Cache(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("verified credentials should not be checked by delegate again")
+    void authenticateCachedTest() {
+        BDDMockito.when(delegate.authenticate(ArgumentMatchers.any())).thenReturn(Mono.just(authenticated()));
+
+        StepVerifier.create(authenticationManager.authenticate(credentials("root")))
+                .expectNextMatches(Authentication::isAuthenticated)
+                .verifyComplete();
+        StepVerifier.create(authenticationManager.authenticate(credentials("root")))
+                .expectNextMatches(authentication -> authentication.isAuthenticated()
+                        && authentication.getName().equals("dog")
+                        && authentication.getAuthorities().equals(authenticated().getAuthorities()))
+                .verifyComplete();
+
+        Mockito.verify(delegate, Mockito.times(1)).authenticate(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("other password should be checked by delegate")
+    void authenticateWrongPasswordTest() {
+        BDDMockito.when(delegate.authenticate(credentials("root"))).thenReturn(Mono.just(authenticated()));
+        BDDMockito.when(delegate.authenticate(credentials("wrong")))
+                .thenReturn(Mono.error(new BadCredentialsException("Invalid Credentials")));
+
+        StepVerifier.create(authenticationManager.authenticate(credentials("root")))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(authenticationManager.authenticate(credentials("wrong")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("failed authentication should not be cached")
+    void authenticateFailedTest() {
+        BDDMockito.when(delegate.authenticate(ArgumentMatchers.any()))
+                .thenReturn(Mono.error(new BadCredentialsException("Invalid Credentials")));
+
+        StepVerifier.create(authenticationManager.authenticate(credentials("root")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+        StepVerifier.create(authenticationManager.authenticate(credentials("root")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+
+        Mockito.verify(delegate, Mockito.times(2)).authenticate(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("changed user should be authenticated by delegate again")
+    void invalidationTest() {
+        BDDMockito.when(delegate.authenticate(ArgumentMatchers.any())).thenReturn(Mono.just(authenticated()));
+
+        StepVerifier.create(authenticationManager.authenticate(credentials("root"))).expectNextCount(1).verifyComplete();
+        authenticationManager.onApplicationUserChanged(ApplicationUserChangedEvent.of("dog"));
+        StepVerifier.create(authenticationManager.authenticate(credentials("root"))).expectNextCount(1).verifyComplete();
+
+        Mockito.verify(delegate, Mockito.times(2)).authenticate(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("all users should be authenticated by delegate again if it is unknown who changed")
+    void invalidationAllTest() {
+        BDDMockito.when(delegate.authenticate(ArgumentMatchers.any())).thenReturn(Mono.just(authenticated()));
+
+        StepVerifier.create(authenticationManager.authenticate(credentials("root"))).expectNextCount(1).verifyComplete();
+        authenticationManager.onApplicationUserChanged(ApplicationUserChangedEvent.all());
+        StepVerifier.create(authenticationManager.authenticate(credentials("root"))).expectNextCount(1).verifyComplete();
+
+        Mockito.verify(delegate, Mockito.times(2)).authenticate(ArgumentMatchers.any());
+    }
+
+    private static Authentication credentials(String password) {
+        return UsernamePasswordAuthenticationToken.unauthenticated("dog", password);
+    }
+
+    private static Authentication authenticated() {
+        return UsernamePasswordAuthenticationToken.authenticated(
+                "dog", "root", AuthorityUtils.createAuthorityList("ROLE_USER"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.afalenkin.webfluxnotes.security;
+
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.authority.AuthorityUtils;
+import reactor.blockhound.BlockHound;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class TokenServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    private AuthProperties properties;
+    private TokenService tokenService;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new AuthProperties();
+        properties.getToken().setSecret(SECRET);
+        tokenService = new TokenService(properties, new ObjectMapper());
+    }
+
+    @Test
+    @DisplayName("issued token should be verified with its claims")
+    void issueAndVerifyTest() {
+        AccessToken token = tokenService.issue("god", AuthorityUtils.createAuthorityList("ROLE_ADMIN", "ROLE_USER"));
+
+        Assertions.assertEquals(TokenService.TOKEN_TYPE, token.getTokenType());
+        Assertions.assertEquals(properties.getToken().getTtl().toSeconds(), token.getExpiresIn());
+        TokenClaims claims = tokenService.verify(token.getAccessToken()).orElseThrow();
+        Assertions.assertEquals("god", claims.getSub());
+        Assertions.assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"), claims.getRoles());
+    }
+
+    @Test
+    @DisplayName("token with changed payload should be rejected")
+    void tamperedTokenTest() {
+        String token = tokenService.issue("dog", AuthorityUtils.createAuthorityList("ROLE_USER")).getAccessToken();
+        String[] parts = token.split("\\.");
+        String forged = tokenService.issue("dog", AuthorityUtils.createAuthorityList("ROLE_ADMIN"))
+                .getAccessToken().split("\\.")[1];
+
+        Assertions.assertTrue(tokenService.verify(parts[0] + "." + forged + "." + parts[2]).isEmpty());
+        Assertions.assertTrue(tokenService.verify(parts[0] + "." + parts[1] + ".").isEmpty());
+        Assertions.assertTrue(tokenService.verify("garbage").isEmpty());
+    }
+
+    @Test
+    @DisplayName("token signed by other key should be rejected")
+    void otherKeyTest() {
+        AuthProperties other = new AuthProperties();
+        other.getToken().setSecret(SECRET.toUpperCase());
+        String token = new TokenService(other, new ObjectMapper())
+                .issue("god", AuthorityUtils.createAuthorityList("ROLE_ADMIN"))
+                .getAccessToken();
+
+        Assertions.assertTrue(tokenService.verify(token).isEmpty());
+    }
+
+    @Test
+    @DisplayName("expired token should be rejected")
+    void expiredTokenTest() {
+        properties.getToken().setTtl(Duration.ofSeconds(-1));
+        String token = new TokenService(properties, new ObjectMapper())
+                .issue("god", AuthorityUtils.createAuthorityList("ROLE_ADMIN"))
+                .getAccessToken();
+
+        Assertions.assertTrue(tokenService.verify(token).isEmpty());
+    }
+
+    @Test
+    @DisplayName("short secret should not be accepted")
+    void shortSecretTest() {
+        properties.getToken().setSecret("secret");
+
+        Assertions.assertThrows(IllegalStateException.class, () -> new TokenService(properties, new ObjectMapper()));
+    }
+
+    @Test
+    @DisplayName("authentication manager should authenticate by token without user storage")
+    void authenticationManagerTest() {
+        TokenAuthenticationManager authenticationManager = new TokenAuthenticationManager(tokenService);
+        String token = tokenService.issue("god", AuthorityUtils.createAuthorityList("ROLE_ADMIN")).getAccessToken();
+
+        StepVerifier.create(authenticationManager.authenticate(TokenAuthentication.unauthenticated(token)))
+                .expectNextMatches(authentication -> authentication.isAuthenticated()
+                        && authentication.getName().equals("god")
+                        && authentication.getAuthorities().equals(AuthorityUtils.createAuthorityList("ROLE_ADMIN")))
+                .verifyComplete();
+        StepVerifier.create(authenticationManager.authenticate(TokenAuthentication.unauthenticated("garbage")))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+}
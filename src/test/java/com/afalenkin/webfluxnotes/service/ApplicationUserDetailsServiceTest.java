@@ -0,0 +1,125 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.config.AuthProperties;
+import com.afalenkin.webfluxnotes.domain.ApplicationUser;
+import com.afalenkin.webfluxnotes.repository.ApplicationUserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+@ExtendWith(SpringExtension.class)
+class ApplicationUserDetailsServiceTest {
+
+    private static final String USERNAME = "dog";
+
+    @Mock
+    private ApplicationUserRepository repository;
+
+    private MeterRegistry meterRegistry;
+
+    private ApplicationUserDetailsService userDetailsService;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsService = new ApplicationUserDetailsService(repository, new AuthProperties(), meterRegistry);
+    }
+
+    @Test
+    @DisplayName("findByUsername should load user from repository only once")
+    void findByUsernameCachedTest() {
+        BDDMockito.when(repository.findByUsername(USERNAME)).thenReturn(Mono.just(applicationUser()));
+
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME))
+                .expectNext(applicationUser())
+                .verifyComplete();
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME))
+                .expectNext(applicationUser())
+                .verifyComplete();
+
+        Mockito.verify(repository, Mockito.times(1)).findByUsername(USERNAME);
+        Assertions.assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tag("cache", ApplicationUserDetailsService.CACHE_NAME)
+                .tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("concurrent lookups of the same user should share one repository query")
+    void findByUsernameCoalescedTest() {
+        Sinks.One<ApplicationUser> sink = Sinks.one();
+        BDDMockito.when(repository.findByUsername(USERNAME)).thenReturn(sink.asMono());
+
+        Mono<UserDetails> first = userDetailsService.findByUsername(USERNAME).cache();
+        Mono<UserDetails> second = userDetailsService.findByUsername(USERNAME).cache();
+        first.subscribe();
+        second.subscribe();
+        sink.tryEmitValue(applicationUser());
+
+        StepVerifier.create(first).expectNext(applicationUser()).verifyComplete();
+        StepVerifier.create(second).expectNext(applicationUser()).verifyComplete();
+        Mockito.verify(repository, Mockito.times(1)).findByUsername(USERNAME);
+    }
+
+    @Test
+    @DisplayName("findByUsername should not cache absent users")
+    void findByUsernameNotFoundTest() {
+        BDDMockito.when(repository.findByUsername(USERNAME)).thenReturn(Mono.empty());
+
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME)).verifyComplete();
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME)).verifyComplete();
+
+        Mockito.verify(repository, Mockito.times(2)).findByUsername(USERNAME);
+    }
+
+    @Test
+    @DisplayName("changed user should be loaded from repository again")
+    void invalidationTest() {
+        BDDMockito.when(repository.findByUsername(USERNAME)).thenReturn(Mono.just(applicationUser()));
+
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME)).expectNextCount(1).verifyComplete();
+        userDetailsService.onApplicationUserChanged(ApplicationUserChangedEvent.of(USERNAME));
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME)).expectNextCount(1).verifyComplete();
+
+        Mockito.verify(repository, Mockito.times(2)).findByUsername(USERNAME);
+    }
+
+    @Test
+    @DisplayName("all users should be loaded from repository again if it is unknown who changed")
+    void invalidationAllTest() {
+        BDDMockito.when(repository.findByUsername(USERNAME)).thenReturn(Mono.just(applicationUser()));
+
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME)).expectNextCount(1).verifyComplete();
+        userDetailsService.onApplicationUserChanged(ApplicationUserChangedEvent.all());
+        StepVerifier.create(userDetailsService.findByUsername(USERNAME)).expectNextCount(1).verifyComplete();
+
+        Mockito.verify(repository, Mockito.times(2)).findByUsername(USERNAME);
+    }
+
+    private static ApplicationUser applicationUser() {
+        return new ApplicationUser(1, "Dog", USERNAME, "{noop}root", "ROLE_USER");
+    }
+}
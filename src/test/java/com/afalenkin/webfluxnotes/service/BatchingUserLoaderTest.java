@@ -0,0 +1,130 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+
+import static com.afalenkin.webfluxnotes.util.UserData.createdUser;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+@ExtendWith(SpringExtension.class)
+class BatchingUserLoaderTest {
+
+    private static final Duration WINDOW = Duration.ofMillis(10);
+
+    @Mock
+    private UsersRepository repository;
+
+    private VirtualTimeScheduler scheduler;
+    private UsersProperties properties;
+    private BatchingUserLoader userLoader;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        scheduler = VirtualTimeScheduler.create();
+        properties = new UsersProperties();
+        properties.getLoader().setWindow(WINDOW);
+        properties.getLoader().setMaxBatchSize(3);
+        userLoader = new BatchingUserLoader(repository, properties, scheduler);
+    }
+
+    @Test
+    @DisplayName("loads within window should be resolved with one query")
+    void loadBatchedTest() {
+        BDDMockito.when(repository.findByIds(new Integer[]{1, 2}))
+                .thenReturn(Flux.just(createdUser(), user(2)));
+
+        Mono<User> first = userLoader.load(1).cache();
+        Mono<User> second = userLoader.load(2).cache();
+        Mono<User> duplicate = userLoader.load(1).cache();
+        first.subscribe();
+        second.subscribe();
+        duplicate.subscribe();
+
+        Mockito.verify(repository, Mockito.never()).findByIds(ArgumentMatchers.any());
+        scheduler.advanceTimeBy(WINDOW);
+
+        StepVerifier.create(first).expectNext(createdUser()).verifyComplete();
+        StepVerifier.create(second).expectNext(user(2)).verifyComplete();
+        StepVerifier.create(duplicate).expectNext(createdUser()).verifyComplete();
+        Mockito.verify(repository, Mockito.times(1)).findByIds(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("full batch should be loaded without waiting for window")
+    void loadFullBatchTest() {
+        BDDMockito.when(repository.findByIds(new Integer[]{1, 2, 3}))
+                .thenReturn(Flux.just(createdUser(), user(2), user(3)));
+        BDDMockito.when(repository.findByIds(new Integer[]{4})).thenReturn(Flux.just(user(4)));
+
+        Mono<User> third = userLoader.load(3).cache();
+        userLoader.load(1).subscribe();
+        userLoader.load(2).subscribe();
+        third.subscribe();
+        Mono<User> fourth = userLoader.load(4).cache();
+        fourth.subscribe();
+
+        StepVerifier.create(third).expectNext(user(3)).verifyComplete();
+        Mockito.verify(repository, Mockito.never()).findByIds(new Integer[]{4});
+
+        scheduler.advanceTimeBy(WINDOW);
+        StepVerifier.create(fourth).expectNext(user(4)).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("absent user should be resolved as empty")
+    void loadNotFoundTest() {
+        BDDMockito.when(repository.findByIds(new Integer[]{2})).thenReturn(Flux.empty());
+
+        Mono<User> user = userLoader.load(2).cache();
+        user.subscribe();
+        scheduler.advanceTimeBy(WINDOW);
+
+        StepVerifier.create(user).verifyComplete();
+    }
+
+    @Test
+    @DisplayName("failed query should fail every load in batch")
+    void loadFailedTest() {
+        BDDMockito.when(repository.findByIds(new Integer[]{1, 2}))
+                .thenReturn(Flux.error(new IllegalStateException()));
+
+        Mono<User> first = userLoader.load(1).cache();
+        Mono<User> second = userLoader.load(2).cache();
+        first.subscribe(user -> { }, error -> { });
+        second.subscribe(user -> { }, error -> { });
+        scheduler.advanceTimeBy(WINDOW);
+
+        StepVerifier.create(first).expectError(IllegalStateException.class).verify();
+        StepVerifier.create(second).expectError(IllegalStateException.class).verify();
+    }
+
+    private static User user(int id) {
+        return createdUser().withId(id);
+    }
+}
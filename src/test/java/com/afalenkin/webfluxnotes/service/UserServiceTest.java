@@ -1,7 +1,18 @@
 package com.afalenkin.webfluxnotes.service;
 
+import com.afalenkin.webfluxnotes.cache.CacheInvalidationBus;
+import com.afalenkin.webfluxnotes.cache.LocalCacheInvalidationBus;
+import com.afalenkin.webfluxnotes.cache.NoOpUserCache;
+import com.afalenkin.webfluxnotes.cache.UserCache;
+import com.afalenkin.webfluxnotes.config.ReplicasProperties;
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.ImportProgress;
 import com.afalenkin.webfluxnotes.domain.User;
+import com.afalenkin.webfluxnotes.domain.UsersPage;
+import com.afalenkin.webfluxnotes.exception.InvalidRequestException;
+import com.afalenkin.webfluxnotes.repository.UsersBulkLoader;
 import com.afalenkin.webfluxnotes.repository.UsersRepository;
+import com.afalenkin.webfluxnotes.routing.ReadYourWrites;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
@@ -12,6 +23,7 @@ import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.blockhound.BlockHound;
@@ -21,11 +33,14 @@ import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.test.StepVerifier;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.afalenkin.webfluxnotes.util.UserData.createdUser;
 import static com.afalenkin.webfluxnotes.util.UserData.newUser;
@@ -44,6 +59,24 @@ class UserServiceTest {
     @Mock
     private UsersRepository repository;
 
+    @Mock
+    private UsersBulkLoader bulkLoader;
+
+    @Mock
+    private UserLoader userLoader;
+
+    @Spy
+    private UsersProperties properties = new UsersProperties();
+
+    @Spy
+    private UserCache userCache = new NoOpUserCache();
+
+    @Spy
+    private CacheInvalidationBus invalidationBus = new LocalCacheInvalidationBus(new NoOpUserCache());
+
+    @Spy
+    private ReadYourWrites readYourWrites = new ReadYourWrites(new ReplicasProperties());
+
     @BeforeAll
     static void blockHoundSetup() {
         BlockHound.install();
@@ -80,10 +113,87 @@ class UserServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("stream should read users with configured fetch size")
+    void streamTest() {
+        BDDMockito.when(repository.streamAll(properties.getStream().getFetchSize()))
+                .thenReturn(Flux.just(createdUser(), updatedUser()));
+
+        StepVerifier.create(userService.stream())
+                .expectSubscription()
+                .expectNext(createdUser(), updatedUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("stream should not request more users than limit rate")
+    void streamBackpressureTest() {
+        properties.getStream().setLimitRate(2);
+        List<Long> requests = new ArrayList<>();
+        BDDMockito.when(repository.streamAll(ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.range(1, 10).map(id -> createdUser().withId(id)).doOnRequest(requests::add));
+
+        StepVerifier.create(userService.stream(), 0)
+                .expectSubscription()
+                .thenRequest(1)
+                .expectNextCount(1)
+                .thenRequest(Long.MAX_VALUE)
+                .expectNextCount(9)
+                .verifyComplete();
+
+        Assertions.assertTrue(requests.stream().allMatch(request -> request <= 2));
+    }
+
+    @Test
+    @DisplayName("getPage should return a page with next cursor if more users exist")
+    void getPageTest() {
+        BDDMockito.when(repository.findPage(0, 2))
+                .thenReturn(Flux.just(createdUser(), updatedUser().withId(2)));
+
+        StepVerifier.create(userService.getPage(0, 1))
+                .expectSubscription()
+                .expectNext(new UsersPage(List.of(createdUser()), createdUser().getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getPage should return a page without cursor if it is the last one")
+    void getLastPageTest() {
+        BDDMockito.when(repository.findPage(0, 3)).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(userService.getPage(0, 2))
+                .expectSubscription()
+                .expectNext(new UsersPage(List.of(createdUser()), null))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getPage should limit page size")
+    void getPageMaxSizeTest() {
+        BDDMockito.when(repository.findPage(ArgumentMatchers.anyInt(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.empty());
+
+        StepVerifier.create(userService.getPage(0, Integer.MAX_VALUE))
+                .expectSubscription()
+                .expectNext(new UsersPage(List.of(), null))
+                .verifyComplete();
+
+        Mockito.verify(repository).findPage(0, UserService.MAX_PAGE_SIZE + 1);
+    }
+
+    @Test
+    @DisplayName("getPage should be failed if limit is not positive")
+    void getPageInvalidLimitTest() {
+        StepVerifier.create(userService.getPage(0, 0))
+                .expectSubscription()
+                .expectError(InvalidRequestException.class)
+                .verify();
+    }
+
     @Test
     @DisplayName("getById should return a Mono with one user")
     void getByIdTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(createdUser()));
+        BDDMockito.when(userLoader.load(1)).thenReturn(Mono.just(createdUser()));
 
         StepVerifier.create(userService.getById(1))
                 .expectSubscription()
@@ -91,10 +201,23 @@ class UserServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("getById should load user through the cache")
+    void getByIdCachedTest() {
+        BDDMockito.when(userLoader.load(1)).thenReturn(Mono.just(createdUser()));
+
+        StepVerifier.create(userService.getById(1))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+
+        Mockito.verify(userCache).get(ArgumentMatchers.eq(1), ArgumentMatchers.any());
+    }
+
     @Test
     @DisplayName("getById should return a empty Mono if user not exists")
     void getByIdNotFoundTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(2))).thenReturn(Mono.empty());
+        BDDMockito.when(userLoader.load(2)).thenReturn(Mono.empty());
 
         StepVerifier.create(userService.getById(2))
                 .expectSubscription()
@@ -102,6 +225,88 @@ class UserServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("getByIds should load distinct users with one query")
+    void getByIdsTest() {
+        BDDMockito.when(repository.findByIds(new Integer[]{1, 2})).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(userService.getByIds(List.of(1, 2, 1)))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("getByIds should not query database for empty ids")
+    void getByIdsEmptyTest() {
+        StepVerifier.create(userService.getByIds(List.of()))
+                .expectSubscription()
+                .verifyComplete();
+
+        Mockito.verify(repository, Mockito.never()).findByIds(ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("getByIds should be failed if too many ids requested")
+    void getByIdsTooManyTest() {
+        List<Integer> ids = IntStream.rangeClosed(1, UserService.MAX_IDS + 1).boxed().collect(Collectors.toList());
+
+        StepVerifier.create(userService.getByIds(ids))
+                .expectSubscription()
+                .expectError(InvalidRequestException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("search by prefix should query case-insensitive name range")
+    void searchPrefixTest() {
+        BDDMockito.when(repository.findByNamePrefix("us", "ut", 10, 20)).thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(userService.search("Us", true, 10, 20))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search by substring should escape LIKE wildcards and limit page size")
+    void searchSubstringTest() {
+        BDDMockito.when(repository.findByNameContaining("%50\\%\\_%", 0, UserService.MAX_PAGE_SIZE))
+                .thenReturn(Flux.just(createdUser()));
+
+        StepVerifier.create(userService.search("50%_", false, 0, UserService.MAX_PAGE_SIZE + 1))
+                .expectSubscription()
+                .expectNext(createdUser())
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search should be failed for blank or too short substring query")
+    void searchInvalidTest() {
+        StepVerifier.create(userService.search(" ", true, 0, 10))
+                .expectError(InvalidRequestException.class)
+                .verify();
+        StepVerifier.create(userService.search("us", false, 0, 10))
+                .expectError(InvalidRequestException.class)
+                .verify();
+        StepVerifier.create(userService.search("user", false, 0, 0))
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("nextPrefix should return smallest string greater than all strings with prefix")
+    void nextPrefixTest() {
+        String max = new String(Character.toChars(Character.MAX_CODE_POINT));
+
+        Assertions.assertEquals("ac", UserService.nextPrefix("ab"));
+        Assertions.assertEquals("b", UserService.nextPrefix("a" + max));
+        Assertions.assertEquals("\uE000", UserService.nextPrefix("\uD7FF"));
+        Assertions.assertNull(UserService.nextPrefix(max));
+    }
+
     @Test
     @DisplayName("save creates new user")
     void saveTest() {
@@ -116,70 +321,142 @@ class UserServiceTest {
     @Test
     @DisplayName("delete user by ID")
     void deleteTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.eq(1))).thenReturn(Mono.just(createdUser()));
-        BDDMockito.when(repository.delete(ArgumentMatchers.any(User.class))).thenReturn(Mono.empty());
+        BDDMockito.when(repository.deleteUser(1)).thenReturn(Mono.just(1));
 
         StepVerifier.create(userService.delete(1))
                 .expectSubscription()
                 .expectNextCount(0)
                 .verifyComplete();
+
+        Mockito.verify(invalidationBus).invalidate(1);
     }
 
     @Test
     @DisplayName("delete user by ID if user does not exists")
     void deleteNotExistsTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.anyInt())).thenReturn(Mono.empty());
-        BDDMockito.verify(repository, Mockito.never()).delete(ArgumentMatchers.any());
+        BDDMockito.when(repository.deleteUser(ArgumentMatchers.anyInt())).thenReturn(Mono.just(0));
 
         StepVerifier.create(userService.delete(2))
                 .expectSubscription()
                 .expectNextCount(0)
                 .verifyComplete();
+
+        Mockito.verify(invalidationBus, Mockito.never()).invalidate(ArgumentMatchers.anyInt());
+        Mockito.verify(repository, Mockito.never()).findById(ArgumentMatchers.anyInt());
     }
 
     @Test
     @DisplayName("update should update user if it exists")
     void updateTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.anyInt())).thenReturn(Mono.just(createdUser()));
-        BDDMockito.when(repository.save(ArgumentMatchers.any(User.class))).thenReturn(Mono.just(updatedUser()));
+        BDDMockito.when(repository.updateName(updatedUser().getId(), updatedUser().getName()))
+                .thenReturn(Mono.just(1));
 
         StepVerifier.create(userService.update(updatedUser()))
                 .expectSubscription()
                 .verifyComplete();
+
+        Mockito.verify(invalidationBus).invalidate(updatedUser().getId());
     }
 
     @Test
     @DisplayName("updatedo nothing if user does not exists")
     void updateNotExistsTest() {
-        BDDMockito.when(repository.findById(ArgumentMatchers.anyInt())).thenReturn(Mono.empty());
-        BDDMockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
+        BDDMockito.when(repository.updateName(ArgumentMatchers.anyInt(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(userService.update(updatedUser()))
                 .expectSubscription()
                 .verifyComplete();
+
+        Mockito.verify(invalidationBus, Mockito.never()).invalidate(ArgumentMatchers.anyInt());
+        Mockito.verify(repository, Mockito.never()).save(ArgumentMatchers.any());
     }
 
     @Test
     void saveBatchTest() {
-        BDDMockito.when(repository.saveAll(List.of(newUser(), newUser())))
+        BDDMockito.when(repository.insertAll(List.of(newUser(), newUser()), properties.getBatch().getChunkSize()))
                 .thenReturn(Flux.just(createdUser(), createdUser()));
 
         StepVerifier.create(userService.save(List.of(newUser(), newUser())))
                 .expectSubscription()
                 .expectNext(createdUser(), createdUser())
                 .verifyComplete();
+
+        Mockito.verify(repository, Mockito.never()).saveAll(ArgumentMatchers.<Iterable<User>>any());
     }
 
     @Test
+    @DisplayName("batch should be validated before anything is written")
     void saveBatchFailedTest() {
-        BDDMockito.when(repository.saveAll(List.of(newUser(), newUser())))
-                .thenReturn(Flux.just(createdUser(), createdUser().withName("")));
-
-        StepVerifier.create(userService.save(List.of(newUser(), newUser())))
+        StepVerifier.create(userService.save(List.of(newUser(), newUser().withName(""))))
                 .expectSubscription()
-                .expectNext(createdUser())
                 .expectError(ResponseStatusException.class)
                 .verify();
+
+        Mockito.verify(repository, Mockito.never()).insertAll(ArgumentMatchers.any(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("batch with existing users should be rejected")
+    void saveBatchWithIdTest() {
+        StepVerifier.create(userService.save(List.of(newUser(), createdUser())))
+                .expectSubscription()
+                .expectError(InvalidRequestException.class)
+                .verify();
+
+        Mockito.verify(repository, Mockito.never()).insertAll(ArgumentMatchers.any(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("importUsers should write valid users in chunks and count invalid ones")
+    void importUsersTest() {
+        properties.getBatch().setChunkSize(2);
+        BDDMockito.when(repository.insertAll(ArgumentMatchers.anyList(), ArgumentMatchers.eq(2)))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<User>>getArgument(0))
+                        .map(user -> user.withId(1)));
+
+        Flux<User> users = Flux.just(newUser(), newUser().withName(""), newUser(), createdUser(), newUser());
+
+        StepVerifier.create(userService.importUsers(users))
+                .expectSubscription()
+                .expectNext(new ImportProgress(1, 1))
+                .expectNext(new ImportProgress(2, 2))
+                .expectNext(new ImportProgress(3, 2))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("importUsers should not read more users than one chunk ahead")
+    void importUsersBackpressureTest() {
+        properties.getBatch().setChunkSize(2);
+        List<Long> requests = new ArrayList<>();
+        BDDMockito.when(repository.insertAll(ArgumentMatchers.anyList(), ArgumentMatchers.eq(2)))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<User>>getArgument(0)));
+
+        Flux<User> users = Flux.range(1, 10).map(i -> newUser()).doOnRequest(requests::add);
+
+        StepVerifier.create(userService.importUsers(users))
+                .expectSubscription()
+                .expectNextCount(5)
+                .verifyComplete();
+
+        Assertions.assertTrue(requests.stream().allMatch(request -> request <= 2));
+    }
+
+    @Test
+    @DisplayName("load should copy valid users and report invalid ones")
+    void loadTest() {
+        int flushRows = properties.getCopy().getFlushRows();
+        BDDMockito.when(bulkLoader.copy(ArgumentMatchers.any(), ArgumentMatchers.eq(flushRows)))
+                .thenAnswer(invocation -> invocation.<Flux<User>>getArgument(0).count());
+
+        StepVerifier.create(userService.load(Flux.just(newUser(), newUser().withName(""), createdUser(), newUser())))
+                .expectSubscription()
+                .assertNext(report -> {
+                    Assertions.assertEquals(2, report.getLoaded());
+                    Assertions.assertEquals(2, report.getFailed());
+                })
+                .verifyComplete();
     }
 
-}
\ No newline at end of file
+}
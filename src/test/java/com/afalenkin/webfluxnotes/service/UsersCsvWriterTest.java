@@ -0,0 +1,133 @@
+package com.afalenkin.webfluxnotes.service;
+
+import com.afalenkin.webfluxnotes.config.UsersProperties;
+import com.afalenkin.webfluxnotes.domain.User;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Alenkin Andrew
+ * oxqq@ya.ru
+ */
+class UsersCsvWriterTest {
+
+    private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    private UsersProperties properties;
+    private UsersCsvWriter csvWriter;
+
+    @BeforeAll
+    static void blockHoundSetup() {
+        BlockHound.install();
+    }
+
+    @BeforeEach
+    void setUp() {
+        properties = new UsersProperties();
+        csvWriter = new UsersCsvWriter(properties);
+    }
+
+    @Test
+    @DisplayName("write should write header and one line per user")
+    void writeTest() {
+        Flux<User> users = Flux.just(user(1, "first"), user(0, "zero"), user(Integer.MAX_VALUE, "max"),
+                user(Integer.MIN_VALUE, "min"));
+
+        Assertions.assertEquals(UsersCsvWriter.HEADER
+                        + "1,first\n0,zero\n2147483647,max\n-2147483648,min\n",
+                new String(read(csvWriter.write(users, bufferFactory, false)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("write should quote names with CSV special characters")
+    void writeEscapingTest() {
+        Flux<User> users = Flux.just(user(1, "a,b"), user(2, "say \"hi\""), user(3, "line\nbreak"),
+                user(4, "юникод"));
+
+        Assertions.assertEquals(UsersCsvWriter.HEADER
+                        + "1,\"a,b\"\n2,\"say \"\"hi\"\"\"\n3,\"line\nbreak\"\n4,юникод\n",
+                new String(read(csvWriter.write(users, bufferFactory, false)), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("write should put several rows into one buffer")
+    void writeBuffersTest() {
+        properties.getExport().setRowsPerBuffer(2);
+        Flux<User> users = Flux.range(1, 5).map(id -> user(id, "user" + id));
+
+        StepVerifier.create(csvWriter.write(users, bufferFactory, false).doOnNext(DataBufferUtils::release))
+                .expectNextCount(4)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("write should produce a valid gzip stream")
+    void writeGzipTest() throws IOException {
+        properties.getExport().setRowsPerBuffer(2);
+        Flux<User> users = Flux.range(1, 5).map(id -> user(id, "user" + id));
+
+        byte[] compressed = read(csvWriter.write(users, bufferFactory, true));
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            Assertions.assertEquals(UsersCsvWriter.HEADER + "1,user1\n2,user2\n3,user3\n4,user4\n5,user5\n",
+                    new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @DisplayName("write should compress pooled direct buffers with poorly compressible rows")
+    void writeGzipIncompressibleTest() throws IOException {
+        properties.getExport().setRowsPerBuffer(50);
+        Random random = new Random(42);
+        List<User> users = IntStream.range(0, 500)
+                .mapToObj(id -> user(id, random.ints(40, 'A', 'z' + 1)
+                        .mapToObj(c -> String.valueOf((char) c))
+                        .collect(Collectors.joining())
+                        .replaceAll("[^A-Za-z]", "x")))
+                .collect(Collectors.toList());
+        String expected = UsersCsvWriter.HEADER + users.stream()
+                .map(user -> user.getId() + "," + user.getName() + "\n")
+                .collect(Collectors.joining());
+        DataBufferFactory pooled = new NettyDataBufferFactory(new PooledByteBufAllocator(true));
+
+        byte[] compressed = read(csvWriter.write(Flux.fromIterable(users), pooled, true));
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            Assertions.assertEquals(expected, new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private byte[] read(Flux<DataBuffer> buffers) {
+        List<DataBuffer> all = buffers.collectList().block();
+        DataBuffer joined = bufferFactory.join(all);
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        DataBufferUtils.release(joined);
+        return bytes;
+    }
+
+    private static User user(int id, String name) {
+        return User.builder().id(id).name(name).build();
+    }
+}
@@ -2,6 +2,7 @@ package com.afalenkin.webfluxnotes.util;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers;
 import org.springframework.stereotype.Component;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -24,4 +25,12 @@ public class WebTestClientUtils {
                 .filter(ExchangeFilterFunctions.basicAuthentication(username, password))
                 .build();
     }
+
+    public WebTestClient tokenClient(String token) {
+        return WebTestClient.bindToApplicationContext(applicationContext)
+                .apply(SecurityMockServerConfigurers.springSecurity())
+                .configureClient()
+                .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                .build();
+    }
 }